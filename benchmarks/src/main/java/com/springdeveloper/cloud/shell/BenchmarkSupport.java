@@ -0,0 +1,95 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * Setting up commands for the benchmarks: an isolated shell home, discarded console output and
+ * a session logged in to a stub controller.
+ */
+class BenchmarkSupport {
+
+	static final String USER = "bench@example.com";
+
+	/**
+	 * Keep the files the shell writes, such as sessions and fingerprints, in a new temporary
+	 * directory instead of the user's shell home.
+	 */
+	static File useTemporaryHome() throws IOException {
+		File home = File.createTempFile("cloud-shell-bench", "");
+		if (!home.delete() || !home.mkdirs()) {
+			throw new IOException("Unable to create " + home);
+		}
+		System.setProperty("cloudshell.home", home.getPath());
+		return home;
+	}
+
+	/**
+	 * Send what commands print to nowhere, so the terminal does not dominate the measurements.
+	 *
+	 * @return the console to restore afterwards
+	 */
+	static PrintStream discardOutput() {
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		return console;
+	}
+
+	static CloudFoundryCommands login(StubCloudController stub) {
+		CloudFoundryCommands commands = new CloudFoundryCommands();
+		commands.target(stub.getUrl(), true);
+		String result = commands.login(USER, "bench", "stub-org", "development", "bench");
+		if (commands.client == null) {
+			throw new IllegalStateException(result);
+		}
+		return commands;
+	}
+
+	/**
+	 * A client that answers app and service listings from a copy fetched once and passes every
+	 * other call on, so that only the work done by the shell is measured.
+	 * <p>
+	 * It is meant to replace the active client of logged-in commands, which is already wrapped
+	 * with retries and request timing, so the calls it passes on keep both; only the listings
+	 * skip them, as they make no request. The session kept under the alias still holds the client
+	 * without the snapshot, so benchmarks must not switch sessions or query with <code>--targets</code>.
+	 */
+	static CloudFoundryOperations snapshot(final CloudFoundryOperations client) {
+		final List<?> apps = client.getApplications();
+		final List<?> services = client.getServices();
+		return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if ("getApplications".equals(method.getName())) {
+							return apps;
+						}
+						if ("getServices".equals(method.getName())) {
+							return services;
+						}
+						try {
+							return method.invoke(client, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+}
@@ -0,0 +1,89 @@
+package com.springdeveloper.cloud.shell;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing, filtering and sorting apps and services with large accounts. The listings are
+ * fetched from the stub controller once, so this measures the shell's selection and table
+ * rendering rather than the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CommandRenderingBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int apps;
+
+	@Param({ "1000" })
+	public int services;
+
+	@Param({ "false", "true" })
+	public boolean v2;
+
+	private StubCloudController stub;
+
+	private CloudFoundryCommands commands;
+
+	private PrintStream console;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkSupport.useTemporaryHome();
+		stub = new StubCloudController(apps, services, 64, 0, v2);
+		stub.start(0);
+		commands = BenchmarkSupport.login(stub);
+		commands.client = BenchmarkSupport.snapshot(commands.client);
+		console = BenchmarkSupport.discardOutput();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(console);
+		stub.stop();
+	}
+
+	@Benchmark
+	public String listApps() {
+		return commands.apps(null, null, null, null);
+	}
+
+	@Benchmark
+	public String listAppsFiltered() {
+		return commands.apps("app-0*1", null, null, null);
+	}
+
+	@Benchmark
+	public String listTopAppsByMemory() {
+		return commands.apps(null, CloudFoundryCommands.AppSort.memory, 20, null);
+	}
+
+	@Benchmark
+	public String listServices() {
+		return commands.services(null, null, null, null);
+	}
+
+	@Benchmark
+	public String listServicesSortedByVersion() {
+		return commands.services(null, CloudFoundryCommands.ServiceSort.version, null, null);
+	}
+}
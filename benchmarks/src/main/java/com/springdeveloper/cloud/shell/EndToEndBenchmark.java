@@ -0,0 +1,93 @@
+package com.springdeveloper.cloud.shell;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commands run against the stub controller over HTTP, through the same client, retry policy
+ * and transport as in the shell, with the controller's latency and response size varied.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+	@Param({ "100", "10000" })
+	public int apps;
+
+	@Param({ "256" })
+	public int payloadBytes;
+
+	@Param({ "0", "20" })
+	public long latencyMillis;
+
+	@Param({ "false", "true" })
+	public boolean v2;
+
+	private StubCloudController stub;
+
+	private CloudFoundryCommands commands;
+
+	private PrintStream console;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkSupport.useTemporaryHome();
+		stub = new StubCloudController(apps, 100, payloadBytes, latencyMillis, v2);
+		stub.start(0);
+		commands = BenchmarkSupport.login(stub);
+		console = BenchmarkSupport.discardOutput();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(console);
+		stub.stop();
+	}
+
+	@Benchmark
+	public String listApps() {
+		return commands.apps(null, null, null, null);
+	}
+
+	@Benchmark
+	public String listServices() {
+		return commands.services(null, null, null, null);
+	}
+
+	/**
+	 * The cloud info as <code>cf info</code> shows it, from the copy cached for the target.
+	 */
+	@Benchmark
+	public String info() {
+		return commands.info(false);
+	}
+
+	/**
+	 * Fetching the cloud info from the controller, as <code>cf info --refresh</code> does, but
+	 * without writing the targets file that the command updates.
+	 */
+	@Benchmark
+	public Object fetchInfo() throws MalformedURLException {
+		return HttpTransport.shared().getAnonymousClient(stub.getUrl()).getCloudInfo();
+	}
+}
@@ -0,0 +1,122 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading an aggregate app manifest and planning a push of it: parsing the YAML, comparing the
+ * entries with the apps and services that exist, and the whole <code>cf push-manifest
+ * --dry-run</code> command. Half of the manifest's apps already exist on the stub controller.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ManifestBenchmark {
+
+	@Param({ "10", "1000" })
+	public int entries;
+
+	@Param({ "false", "true" })
+	public boolean v2;
+
+	private StubCloudController stub;
+
+	private CloudFoundryCommands commands;
+
+	private PrintStream console;
+
+	private File manifestFile;
+
+	private Manifest manifest;
+
+	private List<CloudApplication> existingApps;
+
+	private List<CloudService> existingServices;
+
+	private final ManifestPlan.ChangeCheck unchanged = new ManifestPlan.ChangeCheck() {
+		@Override
+		public boolean isChanged(Manifest.AppEntry appEntry) {
+			return false;
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File home = BenchmarkSupport.useTemporaryHome();
+		stub = new StubCloudController(entries / 2, Math.max(1, entries / 20), 64, 0, v2);
+		stub.start(0);
+		commands = BenchmarkSupport.login(stub);
+		commands.client = BenchmarkSupport.snapshot(commands.client);
+		existingApps = commands.client.getApplications();
+		existingServices = commands.client.getServices();
+		manifestFile = new File(home, "manifest.yml");
+		writeManifest(manifestFile, entries);
+		manifest = Manifest.load(manifestFile);
+		console = BenchmarkSupport.discardOutput();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.setOut(console);
+		stub.stop();
+	}
+
+	private static void writeManifest(File file, int entries) throws IOException {
+		Writer out = new FileWriter(file);
+		try {
+			int services = Math.max(1, entries / 10);
+			out.write("services:\n");
+			for (int i = 0; i < services; i++) {
+				out.write("- name: " + StubCloudController.serviceName(i) + "\n  label: mysql\n  plan: free\n  version: '5.1'\n");
+			}
+			out.write("applications:\n");
+			for (int i = 0; i < entries; i++) {
+				String name = StubCloudController.appName(i);
+				out.write("- name: " + name + "\n  runtime: java\n  framework: spring\n  memory: 512M\n  instances: 2\n" +
+						"  urls:\n  - " + name + ".stub.local\n  services:\n  - " + StubCloudController.serviceName(i % services) +
+						"\n  path: target/" + name + ".war\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@Benchmark
+	public Object parse() throws IOException {
+		return Manifest.load(manifestFile);
+	}
+
+	@Benchmark
+	public Object plan() throws IOException, InterruptedException {
+		return ManifestPlan.forPush(manifest, existingApps, existingServices, unchanged);
+	}
+
+	@Benchmark
+	public String pushManifestDryRun() {
+		return commands.pushManifest(manifestFile, 1, true, null, false);
+	}
+}
@@ -0,0 +1,64 @@
+package com.springdeveloper.cloud.shell;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting the REST log and its per-endpoint statistics once the buffer is full. The entries
+ * are real ones, recorded by the client while listing apps on the stub controller.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RestLogBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean v2;
+
+	private StubCloudController stub;
+
+	private CloudFoundryCommands commands;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkSupport.useTemporaryHome();
+		stub = new StubCloudController(10, 10, 0, 0, v2);
+		stub.start(0);
+		commands = BenchmarkSupport.login(stub);
+		for (int i = 0; i < RestLogBuffer.DEFAULT_CAPACITY; i++) {
+			commands.client.getApplications();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		stub.stop();
+	}
+
+	@Benchmark
+	public String print() {
+		return commands.restlog(true, false, false);
+	}
+
+	@Benchmark
+	public String stats() {
+		return commands.restlog(false, false, true);
+	}
+}
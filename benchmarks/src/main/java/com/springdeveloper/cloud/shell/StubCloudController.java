@@ -0,0 +1,324 @@
+package com.springdeveloper.cloud.shell;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for a v1 or v2 cloud controller that answers the requests the shell makes
+ * with generated apps and services, after a fixed delay, so commands can be measured end to
+ * end without a cloud. Listings are rendered once up front; every app carries an environment
+ * variable of the configured size to control how large the responses are.
+ * <p>
+ * Requests that change apps or services are accepted but change nothing.
+ */
+class StubCloudController {
+
+	static final String TOKEN = "stub-token";
+
+	private final int apps;
+
+	private final int services;
+
+	private final int payloadBytes;
+
+	private final long latencyMillis;
+
+	private final boolean v2;
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private byte[] appList;
+
+	private byte[] serviceList;
+
+	private byte[] spaceList;
+
+	StubCloudController(int apps, int services, int payloadBytes, long latencyMillis, boolean v2) {
+		this.apps = apps;
+		this.services = services;
+		this.payloadBytes = payloadBytes;
+		this.latencyMillis = latencyMillis;
+		this.v2 = v2;
+	}
+
+	/**
+	 * Run a stub controller until the process is stopped, for trying commands against it from
+	 * the shell: <code>--port 8181 --apps 10000 --services 100 --payload 256 --latency 20 --v2</code>.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = 8181;
+		int apps = 1000;
+		int services = 100;
+		int payload = 256;
+		long latency = 0;
+		boolean v2 = false;
+		for (int i = 0; i < args.length; i++) {
+			if ("--v2".equals(args[i])) {
+				v2 = true;
+			} else if (i + 1 < args.length) {
+				if ("--port".equals(args[i])) {
+					port = Integer.parseInt(args[++i]);
+				} else if ("--apps".equals(args[i])) {
+					apps = Integer.parseInt(args[++i]);
+				} else if ("--services".equals(args[i])) {
+					services = Integer.parseInt(args[++i]);
+				} else if ("--payload".equals(args[i])) {
+					payload = Integer.parseInt(args[++i]);
+				} else if ("--latency".equals(args[i])) {
+					latency = Long.parseLong(args[++i]);
+				}
+			}
+		}
+		StubCloudController stub = new StubCloudController(apps, services, payload, latency, v2);
+		stub.start(port);
+		System.out.println("Stub " + (v2 ? "v2" : "v1") + " cloud controller with " + apps + " apps and " + services +
+				" services listening on " + stub.getUrl());
+	}
+
+	void start(int port) throws IOException {
+		appList = (v2 ? renderV2Apps() : renderV1Apps()).getBytes("UTF-8");
+		serviceList = (v2 ? renderV2Services() : renderV1Services()).getBytes("UTF-8");
+		spaceList = renderV2Spaces().getBytes("UTF-8");
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 100);
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "stub-controller-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					respond(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	long getRequests() {
+		return requests.get();
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		drain(exchange.getRequestBody());
+		if (latencyMillis > 0) {
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		if (path.length() > 1 && path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		if ("GET".equals(method) && "/info".equals(path)) {
+			send(exchange, 200, v2 ? renderV2Info() : renderV1Info());
+		} else if ("POST".equals(method) && path.startsWith("/users/") && path.endsWith("/tokens")) {
+			send(exchange, 200, "{\"token\":\"" + TOKEN + "\"}");
+		} else if ("POST".equals(method) && "/oauth/token".equals(path)) {
+			send(exchange, 200, "{\"access_token\":\"" + TOKEN + "\",\"token_type\":\"bearer\",\"refresh_token\":\"" + TOKEN +
+					"\",\"expires_in\":43199,\"scope\":\"cloud_controller.read cloud_controller.write openid\",\"jti\":\"stub\"}");
+		} else if (!"GET".equals(method)) {
+			send(exchange, 200, "{}");
+		} else if ("/apps".equals(path) || (v2 && path.startsWith("/v2/") && path.endsWith("/apps"))) {
+			send(exchange, 200, appList);
+		} else if ("/services".equals(path) || (v2 && path.startsWith("/v2/") && path.endsWith("/service_instances"))) {
+			send(exchange, 200, serviceList);
+		} else if ("/v2/spaces".equals(path)) {
+			send(exchange, 200, spaceList);
+		} else if ("/info/services".equals(path)) {
+			send(exchange, 200, "{}");
+		} else if (path.startsWith("/apps/") && path.endsWith("/instances")) {
+			send(exchange, 200, "{\"instances\":[{\"index\":0,\"state\":\"RUNNING\",\"since\":" +
+					System.currentTimeMillis() / 1000 + "}]}");
+		} else if (path.startsWith("/apps/") && path.indexOf('/', "/apps/".length()) < 0) {
+			int index = parseIndex(path.substring("/apps/".length()));
+			if (index < 0) {
+				send(exchange, 404, "{\"code\":301,\"description\":\"Application not found\"}");
+			} else {
+				send(exchange, 200, renderV1App(index));
+			}
+		} else {
+			send(exchange, 404, v2 ? "{\"code\":10000,\"description\":\"Unknown request\",\"error_code\":\"CF-NotFound\"}" :
+					"{\"code\":100,\"description\":\"Unknown request\"}");
+		}
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (in.read(buffer) >= 0) {
+			// discard the request body
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		send(exchange, status, body.getBytes("UTF-8"));
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.flush();
+	}
+
+	/**
+	 * The index of a generated app from its name, or -1 if there is no such app.
+	 */
+	private int parseIndex(String name) {
+		if (!name.startsWith("app-")) {
+			return -1;
+		}
+		try {
+			int index = Integer.parseInt(name.substring("app-".length()));
+			return index < apps ? index : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	static String appName(int index) {
+		return String.format("app-%05d", index);
+	}
+
+	static String serviceName(int index) {
+		return String.format("svc-%04d", index);
+	}
+
+	private String payload() {
+		StringBuilder payload = new StringBuilder(payloadBytes);
+		for (int i = 0; i < payloadBytes; i++) {
+			payload.append((char) ('a' + i % 26));
+		}
+		return payload.toString();
+	}
+
+	private String renderV1Info() {
+		return "{\"name\":\"vcap\",\"build\":2222,\"support\":\"http://localhost/support\",\"version\":\"0.999\"," +
+				"\"description\":\"Stub Cloud Controller\",\"allow_debug\":false,\"user\":\"bench@example.com\"," +
+				"\"limits\":{\"memory\":" + Math.max(2048, apps * 512) + ",\"app_uris\":4,\"services\":" + Math.max(16, services) +
+				",\"apps\":" + Math.max(20, apps) + "},\"usage\":{\"memory\":" + apps * 512 + ",\"apps\":" + apps +
+				",\"services\":" + services + "},\"frameworks\":{\"spring\":{\"name\":\"spring\",\"runtimes\":[{\"name\":\"java\"," +
+				"\"version\":\"1.6\",\"description\":\"Java 6\"}],\"appservers\":[{\"name\":\"tomcat\",\"description\":\"Tomcat\"}]," +
+				"\"detection\":[{\"*.war\":true}]}}}";
+	}
+
+	private String renderV2Info() {
+		return "{\"name\":\"vcap\",\"build\":\"2222\",\"support\":\"http://localhost/support\",\"version\":2," +
+				"\"description\":\"Stub Cloud Controller\",\"authorization_endpoint\":\"" + getUrl() + "\"," +
+				"\"allow_debug\":false,\"api_version\":\"2.0.0\"}";
+	}
+
+	private String renderV1App(int index) {
+		String name = appName(index);
+		return "{\"name\":\"" + name + "\",\"staging\":{\"model\":\"spring\",\"stack\":\"java\"},\"uris\":[\"" + name +
+				".stub.local\"],\"instances\":" + (1 + index % 3) + ",\"runningInstances\":" + (1 + index % 3) +
+				",\"resources\":{\"memory\":512,\"disk\":2048,\"fds\":256},\"state\":\"" + (index % 10 == 0 ? "STOPPED" : "STARTED") +
+				"\",\"services\":[\"" + serviceName(index % Math.max(1, services)) + "\"],\"version\":\"" + index + "-1\"," +
+				"\"env\":[\"PAYLOAD=" + payload() + "\"],\"meta\":{\"debug\":null,\"version\":1,\"created\":1350000000}}";
+	}
+
+	private String renderV1Apps() {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < apps; i++) {
+			json.append(i > 0 ? "," : "").append(renderV1App(i));
+		}
+		return json.append("]").toString();
+	}
+
+	private String renderV1Services() {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < services; i++) {
+			json.append(i > 0 ? "," : "").append("{\"name\":\"" + serviceName(i) + "\",\"type\":\"database\"," +
+					"\"vendor\":\"mysql\",\"version\":\"5.1\",\"tier\":\"free\",\"properties\":{}," +
+					"\"meta\":{\"created\":1350000000,\"updated\":1350000000,\"tags\":[\"mysql\",\"relational\"],\"version\":1}}");
+		}
+		return json.append("]").toString();
+	}
+
+	private static String metadata(String type, String guid) {
+		return "\"metadata\":{\"guid\":\"" + guid + "\",\"url\":\"/v2/" + type + "/" + guid + "\"," +
+				"\"created_at\":\"2012-10-18T10:00:00+00:00\",\"updated_at\":null}";
+	}
+
+	private static String page(int total, StringBuilder resources) {
+		return "{\"total_results\":" + total + ",\"total_pages\":1,\"prev_url\":null,\"next_url\":null,\"resources\":[" +
+				resources + "]}";
+	}
+
+	private String renderV2Spaces() {
+		StringBuilder resources = new StringBuilder("{" + metadata("spaces", "space-guid") + ",\"entity\":{" +
+				"\"name\":\"development\",\"organization_guid\":\"org-guid\",\"organization\":{" +
+				metadata("organizations", "org-guid") + ",\"entity\":{\"name\":\"stub-org\"}}}}");
+		return page(1, resources);
+	}
+
+	private String renderV2Apps() {
+		StringBuilder resources = new StringBuilder();
+		for (int i = 0; i < apps; i++) {
+			String name = appName(i);
+			resources.append(i > 0 ? "," : "").append("{" + metadata("apps", "app-guid-" + i) + ",\"entity\":{" +
+					"\"name\":\"" + name + "\",\"production\":false,\"space_guid\":\"space-guid\"," +
+					"\"environment_json\":{\"PAYLOAD\":\"" + payload() + "\"},\"memory\":512,\"instances\":" + (1 + i % 3) +
+					",\"disk_quota\":1024,\"state\":\"" + (i % 10 == 0 ? "STOPPED" : "STARTED") + "\",\"version\":\"" + i +
+					"-1\",\"command\":null,\"console\":false," +
+					"\"runtime\":{" + metadata("runtimes", "runtime-guid") + ",\"entity\":{\"name\":\"java\",\"description\":\"Java 6\"}}," +
+					"\"framework\":{" + metadata("frameworks", "framework-guid") + ",\"entity\":{\"name\":\"spring\",\"description\":\"Spring\"}}," +
+					"\"routes\":[{" + metadata("routes", "route-guid-" + i) + ",\"entity\":{\"host\":\"" + name + "\"," +
+					"\"domain\":{" + metadata("domains", "domain-guid") + ",\"entity\":{\"name\":\"stub.local\"}}}}]," +
+					"\"service_bindings\":[]}}");
+		}
+		return page(apps, resources);
+	}
+
+	private String renderV2Services() {
+		StringBuilder resources = new StringBuilder();
+		for (int i = 0; i < services; i++) {
+			resources.append(i > 0 ? "," : "").append("{" + metadata("service_instances", "svc-guid-" + i) + ",\"entity\":{" +
+					"\"name\":\"" + serviceName(i) + "\",\"credentials\":{},\"service_plan_guid\":\"plan-guid\"," +
+					"\"space_guid\":\"space-guid\",\"service_plan\":{" + metadata("service_plans", "plan-guid") + ",\"entity\":{" +
+					"\"name\":\"free\",\"service\":{" + metadata("services", "service-guid") + ",\"entity\":{\"label\":\"mysql\"," +
+					"\"provider\":\"core\",\"version\":\"5.1\"}}}},\"service_bindings\":[]}}");
+		}
+		return page(services, resources);
+	}
+}
@@ -0,0 +1,239 @@
+package com.springdeveloper.cloud.shell;
+
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Commands running in the background of a session. Each job runs on a pool thread with its
+ * output routed to a buffer of its own that keeps only the most recent output, so jobs can be
+ * watched while they run and the prompt stays free for other commands.
+ */
+class BackgroundJobs {
+
+	static final int MAX_RUNNING = 4;
+
+	static final int OUTPUT_CAPACITY = 64 * 1024;
+
+	enum Status {
+		QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+	}
+
+	private final Map<Integer, Job> jobs = new TreeMap<Integer, Job>();
+
+	private final AtomicInteger nextId = new AtomicInteger(1);
+
+	private ExecutorService executor;
+
+	/**
+	 * Queue a command to run in the background.
+	 *
+	 * @return the job, whose result is the command's result
+	 */
+	synchronized Job submit(String command, final Callable<String> work) {
+		if (executor == null) {
+			OutputRouter.install();
+			executor = Executors.newFixedThreadPool(MAX_RUNNING, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "cf-job-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		final Job job = new Job(nextId.getAndIncrement(), command);
+		job.future = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				job.run(work);
+			}
+		});
+		jobs.put(job.id, job);
+		return job;
+	}
+
+	synchronized Job get(int id) {
+		return jobs.get(id);
+	}
+
+	synchronized List<Job> getAll() {
+		return new ArrayList<Job>(jobs.values());
+	}
+
+	/**
+	 * Forget the jobs that are no longer queued or running.
+	 *
+	 * @return the number of jobs removed
+	 */
+	synchronized int removeFinished() {
+		int removed = 0;
+		for (Job job : getAll()) {
+			if (job.isFinished()) {
+				jobs.remove(job.id);
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	static class Job {
+
+		final int id;
+
+		final String command;
+
+		final long submitted = System.currentTimeMillis();
+
+		private final OutputBuffer output = new OutputBuffer(OUTPUT_CAPACITY);
+
+		private final AtomicReference<Status> status = new AtomicReference<Status>(Status.QUEUED);
+
+		private volatile long started;
+
+		private volatile long finished;
+
+		private volatile String result;
+
+		private volatile Future<?> future;
+
+		Job(int id, String command) {
+			this.id = id;
+			this.command = command;
+		}
+
+		private void run(Callable<String> work) {
+			if (!status.compareAndSet(Status.QUEUED, Status.RUNNING)) {
+				return;
+			}
+			started = System.currentTimeMillis();
+			OutputRouter.route(output);
+			try {
+				result = work.call();
+				status.compareAndSet(Status.RUNNING, Status.SUCCEEDED);
+			} catch (Failed e) {
+				result = e.getMessage();
+				status.compareAndSet(Status.RUNNING, Status.FAILED);
+			} catch (Exception e) {
+				result = e.getMessage() != null ? e.getMessage() : e.toString();
+				status.compareAndSet(Status.RUNNING, Status.FAILED);
+			} finally {
+				OutputRouter.clearRoute();
+				finished = System.currentTimeMillis();
+			}
+		}
+
+		/**
+		 * Interrupt the job if it is running, or keep it from starting if it is queued.
+		 *
+		 * @return false if the job had already finished
+		 */
+		boolean cancel() {
+			if (status.compareAndSet(Status.QUEUED, Status.CANCELLED)) {
+				future.cancel(false);
+				finished = System.currentTimeMillis();
+				return true;
+			}
+			if (status.compareAndSet(Status.RUNNING, Status.CANCELLED)) {
+				future.cancel(true);
+				return true;
+			}
+			return false;
+		}
+
+		boolean isFinished() {
+			return finished > 0;
+		}
+
+		Status getStatus() {
+			return status.get();
+		}
+
+		String getResult() {
+			return result;
+		}
+
+		/**
+		 * The time the job has been running, or ran for once finished.
+		 */
+		long getElapsed() {
+			if (started == 0) {
+				return 0;
+			}
+			return (finished > 0 ? finished : System.currentTimeMillis()) - started;
+		}
+
+		String getOutput() {
+			return output.toString();
+		}
+
+		String getLastLine() {
+			String text = output.toString().trim();
+			return text.substring(text.lastIndexOf('\n') + 1);
+		}
+	}
+
+	/**
+	 * Thrown by a job's work to report that the command failed, with the command's result as the message.
+	 */
+	static class Failed extends Exception {
+
+		Failed(String result) {
+			super(result);
+		}
+	}
+
+	/**
+	 * Keeps the last bytes written to it, counting what was dropped to make room.
+	 */
+	private static class OutputBuffer extends OutputStream {
+
+		private final byte[] buffer;
+
+		private long written;
+
+		OutputBuffer(int capacity) {
+			this.buffer = new byte[capacity];
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			buffer[(int) (written++ % buffer.length)] = (byte) b;
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			for (int i = 0; i < len; i++) {
+				buffer[(int) (written++ % buffer.length)] = b[off + i];
+			}
+		}
+
+		@Override
+		public synchronized String toString() {
+			int size = (int) Math.min(written, buffer.length);
+			byte[] content = new byte[size];
+			int start = (int) ((written - size) % buffer.length);
+			for (int i = 0; i < size; i++) {
+				content[i] = buffer[(start + i) % buffer.length];
+			}
+			try {
+				String text = new String(content, "UTF-8");
+				return written > size ? "... " + (written - size) + " earlier bytes dropped\n" + text : text;
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
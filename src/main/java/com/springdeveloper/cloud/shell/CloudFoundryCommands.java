@@ -1,48 +1,220 @@
 package com.springdeveloper.cloud.shell;
 
 import org.cloudfoundry.client.lib.CloudCredentials;
-import org.cloudfoundry.client.lib.CloudFoundryClient;
 import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
 import org.cloudfoundry.client.lib.RestLogCallback;
 import org.cloudfoundry.client.lib.RestLogEntry;
 import org.cloudfoundry.client.lib.domain.CloudApplication;
-import org.cloudfoundry.client.lib.domain.CloudInfo;
+import org.cloudfoundry.client.lib.domain.CloudEntity;
 import org.cloudfoundry.client.lib.domain.CloudService;
 import org.cloudfoundry.client.lib.domain.CloudSpace;
 import org.cloudfoundry.client.lib.domain.InstanceInfo;
 import org.cloudfoundry.client.lib.domain.InstancesInfo;
 import org.cloudfoundry.client.lib.domain.Staging;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.ExecutionProcessor;
 import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
 import org.springframework.shell.core.annotation.CliCommand;
 import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.event.ParseResult;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
-import org.yaml.snakeyaml.Yaml;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.Reader;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  */
 @Component
-public class CloudFoundryCommands implements CommandMarker {
+public class CloudFoundryCommands implements CommandMarker, ExecutionProcessor {
 
 	public static String VERSION = "0.1.1";
 
-	CloudFoundryClient client;
+	static final String APPS_HELP = "A comma separated list of app names or patterns such as 'orders-*'";
+	static final String PARALLEL_HELP = "The number of apps to process concurrently";
+	static final String RATE_HELP = "The maximum number of apps to start processing per second";
+	static final String TARGETS_HELP = "Query these logged-in sessions in parallel: a comma separated list of aliases or patterns, or 'all'";
+	static final String APP_CONTEXT = "disable-string-converter " + CloudNameConverter.APP;
+	static final String SERVICE_CONTEXT = "disable-string-converter " + CloudNameConverter.SERVICE;
+	static final String ORG_CONTEXT = "disable-string-converter " + CloudNameConverter.ORG;
+	static final String SPACE_CONTEXT = "disable-string-converter " + CloudNameConverter.SPACE;
+	static final String BACKGROUND_HELP = "Run the command as a background job and return its job id straight away";
+	static final String WAIT_HELP = "Wait up to this many seconds (300 if no value is given) for the app instances to be running";
+
+	static final int CACHE_SIZE = 500;
+	static final long DEFAULT_CACHE_TTL = 30000;
+
+	CloudFoundryOperations client;
+	HttpTransport transport;
 	String target = "https://api.cloudfoundry.com";
 	boolean v1 = true;
-	List<RestLogEntry> logEntries = new ArrayList<RestLogEntry>();
+	String user;
+	SessionStore.Session session;
+	SpaceIndex spaceIndex;
+	String alias;
+	Map<String, CloudSession> sessions = new LinkedHashMap<String, CloudSession>();
+	SessionStore sessionStore;
+	FingerprintStore fingerprints;
+	TargetInfoCache targetInfoCache;
+	RestLogBuffer restLog;
+	TtlCache<CloudApplication> appCache;
+	TtlCache<CloudService> serviceCache;
+	CommandMetrics metrics;
+	BackgroundJobs jobs;
+	NameIndex names;
+	LogStore logStore;
+	ConcurrentMap<String, ResilientClient.Policy> policies;
+	private final ThreadLocal<Invocation> invocation = new ThreadLocal<Invocation>();
+	/** False in the daemon, whose clients have no way to press Enter to stop a --follow or --watch. */
+	boolean interactive = true;
+
+	public CloudFoundryCommands() {
+		transport = HttpTransport.shared();
+		sessionStore = new SessionStore(ShellHome.getFile("sessions.properties"));
+		fingerprints = new FingerprintStore(ShellHome.getFile("fingerprints"));
+		targetInfoCache = new TargetInfoCache(transport, ShellHome.getFile("targets.properties"), TargetInfoCache.DEFAULT_TTL);
+		restLog = new RestLogBuffer(RestLogBuffer.DEFAULT_CAPACITY);
+		appCache = new TtlCache<CloudApplication>(CACHE_SIZE, DEFAULT_CACHE_TTL);
+		serviceCache = new TtlCache<CloudService>(CACHE_SIZE, DEFAULT_CACHE_TTL);
+		metrics = CommandMetrics.shared();
+		jobs = new BackgroundJobs();
+		names = new NameIndex(new NameIndex.Loader() {
+			@Override
+			public Callable<List<String>> prepare(final NameIndex.Kind kind) {
+				final CloudSession captured = new CloudSession(alias, target, v1, user, session, client, spaceIndex,
+						appCache, serviceCache);
+				return new Callable<List<String>>() {
+					@Override
+					public List<String> call() {
+						return loadNames(kind, captured);
+					}
+				};
+			}
+		}, NameIndex.DEFAULT_TTL);
+		logStore = new LogStore(ShellHome.getFile("logs"));
+		policies = new ConcurrentHashMap<String, ResilientClient.Policy>();
+	}
+
+	/**
+	 * Commands for a background job: bound to the given session, and otherwise sharing the
+	 * stores, caches, logs, metrics and policies of the commands that started the job, so that
+	 * starting a job reads no files and creates no threads.
+	 */
+	private CloudFoundryCommands(CloudFoundryCommands parent, CloudSession cloudSession) {
+		alias = cloudSession.alias;
+		target = cloudSession.target;
+		v1 = cloudSession.v1;
+		user = cloudSession.user;
+		session = cloudSession.session;
+		client = cloudSession.client;
+		spaceIndex = cloudSession.spaceIndex;
+		appCache = cloudSession.appCache;
+		serviceCache = cloudSession.serviceCache;
+		transport = parent.transport;
+		sessionStore = parent.sessionStore;
+		fingerprints = parent.fingerprints;
+		targetInfoCache = parent.targetInfoCache;
+		restLog = parent.restLog;
+		metrics = parent.metrics;
+		jobs = parent.jobs;
+		names = parent.names;
+		logStore = parent.logStore;
+		policies = parent.policies;
+		interactive = parent.interactive;
+	}
 
-	@CliAvailabilityIndicator({"cf info", "cf target"})
+	@Override
+	public ParseResult beforeInvocation(ParseResult invocationContext) {
+		invocation.set(new Invocation());
+		return invocationContext;
+	}
+
+	@Override
+	public void afterReturningInvocation(ParseResult invocationContext, Object result) {
+		recordInvocation(invocationContext, hasFailed());
+	}
+
+	@Override
+	public void afterThrowingInvocation(ParseResult invocationContext, Throwable thrown) {
+		recordInvocation(invocationContext, true);
+	}
+
+	/**
+	 * Record the time taken and the REST requests made by a command. Commands report most failures
+	 * as a result rather than by throwing, marking them with {@link #failed(String)}, so both count
+	 * as errors. A command that started a background job is left to the job to record.
+	 */
+	private void recordInvocation(ParseResult invocationContext, boolean error) {
+		Invocation started = invocation.get();
+		CliCommand command = invocationContext.getMethod().getAnnotation(CliCommand.class);
+		invocation.remove();
+		RestLogBuffer.stopCounting();
+		if (started == null || command == null) {
+			return;
+		}
+		metrics.record(command.value()[0], System.nanoTime() - started.start, error, started.restCalls.get());
+		invalidateNamesAfter(command.value()[0]);
+	}
+
+	/**
+	 * When a command started and the count of the REST requests made for it, by its own thread
+	 * and the workers it starts, but not by other commands, jobs or daemon sessions.
+	 */
+	private static class Invocation {
+
+		final long start = System.nanoTime();
+
+		final AtomicLong restCalls = RestLogBuffer.countCalls();
+
+		volatile boolean failed;
+	}
+
+	/**
+	 * Mark the command running on this thread as failed.
+	 *
+	 * @return the result describing the failure
+	 */
+	private String failed(String result) {
+		Invocation current = invocation.get();
+		if (current != null) {
+			current.failed = true;
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the command running on this thread has reported a failure.
+	 */
+	boolean hasFailed() {
+		Invocation current = invocation.get();
+		return current != null && current.failed;
+	}
+
+	@CliAvailabilityIndicator({"cf info", "cf target", "cf metrics", "cf resilience", "cf sessions", "cf use"})
 	public boolean isAlwaysAvailable() {
 		return true;
 	}
@@ -59,7 +231,8 @@ public class CloudFoundryCommands implements CommandMarker {
 	@CliAvailabilityIndicator({"cf logout", "cf apps", "cf push-app", "cf start", "cf stop", "cf delete-app", "cf restlog",
 							"cf push-manifest", "cf delete-manifest", "cf stats", "cf scale", "cf env", "cf set-env",
 							"cf logs", "cf crashlogs", "cf services", "cf map", "cf unmap",
-							"cf create-service", "cf delete-service", "cf bind-service", "cf unbind-service"})
+							"cf create-service", "cf delete-service", "cf bind-service", "cf unbind-service",
+							"cf cache", "cf spaces", "cf switch-space", "cf wait"})
 	public boolean isLoggedIn() {
 		if (client != null) {
 			return true;
@@ -69,13 +242,15 @@ public class CloudFoundryCommands implements CommandMarker {
 	}
 
 	@CliCommand(value = "cf info", help = "Show cloud info")
-	public String info() {
+	public String info(
+		@CliOption(key = { "refresh" }, mandatory = false, help = "Fetch the cloud info again instead of using the cached copy",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean refresh) {
 		String info = "Not available.";
 		try {
-			CloudFoundryClient infoClient = new CloudFoundryClient(new URL(target));
+			TargetInfoCache.TargetInfo targetInfo = targetInfoCache.get(target, refresh);
 			info =  target + "\n" +
-					infoClient.getCloudInfo().getDescription() + "\n" +
-					"version: " + infoClient.getCloudInfo().getVersion();
+					targetInfo.description + "\n" +
+					"version: " + targetInfo.version;
 		} catch (MalformedURLException e) {
 		}
 		return info;
@@ -84,18 +259,20 @@ public class CloudFoundryCommands implements CommandMarker {
 	@CliCommand(value = "cf target", help = "Target a cloud provider")
 	public String target(
 		@CliOption(key = { "uri" }, mandatory = false, unspecifiedDefaultValue = "https://api.cloudfoundry.com",
-				help = "The uri to target") final String uri) {
+				help = "The uri to target") final String uri,
+		@CliOption(key = { "refresh" }, mandatory = false, help = "Fetch the cloud info again instead of using the cached copy",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean refresh) {
 		try {
-			CloudFoundryClient infoClient = new CloudFoundryClient(new URL(uri));
-			if (infoClient.getCloudInfo().getCloudControllerMajorVersion().equals(CloudInfo.CC_MAJOR_VERSION.V1)) {
-				this.v1 = true;
-			} else {
-				this.v1 = false;
+			boolean targetV1 = targetInfoCache.get(uri, refresh).v1;
+			if (client != null && !uri.equals(target)) {
+				System.out.println("Keeping session " + saveActiveSession().alias + ", switch back to it with cf use");
+				detach();
 			}
+			this.v1 = targetV1;
 			this.target = uri;
 			return "Target set to " + uri;
 		} catch (MalformedURLException e) {
-			return "Invalid URI: " + uri;
+			return failed("Invalid URI: " + uri);
 		}
 	}
 
@@ -106,43 +283,71 @@ public class CloudFoundryCommands implements CommandMarker {
 		@CliOption(key = { "org" }, mandatory = false,
 				help = "The org to target") final String org,
 		@CliOption(key = { "space" }, mandatory = false, unspecifiedDefaultValue = "development",
-				help = "The space to target") final String space){
-		String cloudPwd = passwd == null ? System.getenv("CLOUDPWD") : passwd;
-		Assert.notNull(cloudPwd, "Password is required.");
-		CloudCredentials credentials = new CloudCredentials(user, cloudPwd);
+				help = "The space to target") final String space,
+		@CliOption(key = { "alias" }, mandatory = false,
+				help = "The name to keep this session under, defaults to the target host") final String alias) {
+		CloudSession previous = saveActiveSession();
+		detach();
+		String result = doLogin(user, passwd, org, space);
+		if (client != null) {
+			try {
+				this.alias = alias != null ? alias : new URL(target).getHost();
+			} catch (MalformedURLException e) {
+				this.alias = target;
+			}
+			saveActiveSession();
+			return result + " as session " + this.alias;
+		}
+		if (previous != null) {
+			activate(previous);
+		}
+		return result;
+	}
+
+	private String doLogin(String user, String passwd, String org, String space) {
 		CloudSpace sessionSpace = null;
+		SessionStore.Session session;
+		this.spaceIndex = null;
 		try {
-			this.client = new CloudFoundryClient(credentials, new URL(target));
-			this.client.login();
-			if (!v1) {
-				if (org != null && space != null) {
-					for (CloudSpace s : this.client.getSpaces()) {
-						if (s.getOrganization().getName().equals(org) && s.getName().equals(space)) {
-							sessionSpace = s;
-							break;
+			session = sessionStore.load(target, user);
+			if (session != null && session.isUsable(org, space) && restoreSession(session)) {
+				sessionSpace = session.getSpace();
+			} else {
+				String cloudPwd = passwd == null ? System.getenv("CLOUDPWD") : passwd;
+				Assert.notNull(cloudPwd, "Password is required.");
+				this.client = createClient(new CloudCredentials(user, cloudPwd), null);
+				OAuth2AccessToken token = this.client.login();
+				session = new SessionStore.Session(target, user, token, v1);
+				if (!v1) {
+					if (org != null && space != null) {
+						this.spaceIndex = new SpaceIndex(this.client.getSpaces());
+						sessionSpace = spaceIndex.get(org, space);
+						this.client = null;
+						if (sessionSpace != null) {
+							this.client = createClient(new CloudCredentials(token), sessionSpace);
+							session.setSpace(sessionSpace);
+						} else {
+							return failed("Problem while connecting to " + target + " :: Couldn't find org and space.");
 						}
-					}
-					this.client.logout();
-					this.client = null;
-					if (sessionSpace != null) {
-						this.client = new CloudFoundryClient(credentials, new URL(target), sessionSpace);
-						this.client.login();
 					} else {
-						return "Problem while connecting to " + target + " :: Couldn't find org and space.";
+						this.client = null;
+						return failed("Problem while connecting to " + target + " :: You must specify org and space.");
 					}
-				} else {
-					return "Problem while connecting to " + target + " :: You must specify org and space.";
 				}
-			}
-			logEntries.clear();
-			this.client.registerRestLogListener(new RestLogCallback() {
-				@Override
-				public void onNewLogEntry(RestLogEntry logEntry) {
-					logEntries.add(logEntry);
+				try {
+					sessionStore.save(session);
+				} catch (IOException e) {
+					System.out.println("Unable to save session :: " + e.getMessage());
 				}
-			});
+			}
+			this.user = user;
+			this.session = session;
+			restLog.clear();
+			clearCaches();
+			registerRestLogListener();
 		} catch (Exception e) {
-			return "Error while connecting to " + target + " :: " + e.getMessage();
+			this.client = null;
+			return failed("Error while connecting to " + target + " :: " + e.getMessage());
 		}
 		if (sessionSpace != null) {
 			return "Connected to " + target + " using org/space: " +
@@ -152,160 +357,887 @@ public class CloudFoundryCommands implements CommandMarker {
 		}
 	}
 
+	/**
+	 * Connect with the token of a saved session, checking with one cheap call that the controller
+	 * still accepts it, since it may have been revoked before it expired. The cloud info only
+	 * names the user while the token is accepted. The space index is left to be loaded when a
+	 * command first needs it.
+	 *
+	 * @return false, leaving no client, if the controller rejected the token
+	 */
+	private boolean restoreSession(SessionStore.Session session) throws MalformedURLException {
+		this.v1 = session.v1;
+		this.client = createClient(new CloudCredentials(session.token), session.getSpace());
+		try {
+			if (this.client.getCloudInfo().getUser() != null) {
+				return true;
+			}
+		} catch (CloudFoundryException e) {
+			if (e.getStatusCode() != HttpStatus.UNAUTHORIZED) {
+				throw e;
+			}
+		}
+		System.out.println("The saved session is no longer accepted, logging in with the password");
+		this.client = null;
+		return false;
+	}
+
 	@CliCommand(value = "cf logout", help = "Log-out from a cloud provider")
 	public String logout() {
 		try {
 			this.client.logout();
-			this.client = null;
+			sessions.remove(alias);
+			String loggedOutUser = user;
+			detach();
+			sessionStore.remove(target, loggedOutUser);
 		} catch (RuntimeException e) {
-			return "Error while disconnecting from " + target + " :: " + e.getMessage();
+			return failed("Error while disconnecting from " + target + " :: " + e.getMessage());
+		} catch (IOException e) {
+			return failed("Error while removing saved session for " + target + " :: " + e.getMessage());
 		}
 		return "Disconnecting from " + target ;
 	}
 
+	@CliCommand(value = "cf spaces", help = "List the orgs and spaces available to the logged-in user")
+	public String spaces(
+		@CliOption(key = { "refresh" }, mandatory = false, help = "Reload the org and space list",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean refresh) {
+		if (v1) {
+			return failed("Orgs and spaces are only available on v2 targets.");
+		}
+		StringBuilder spaceList = new StringBuilder();
+		try {
+			SpaceIndex index = getSpaceIndex(refresh);
+			for (Map.Entry<String, Map<String, CloudSpace>> org : index.getOrgs().entrySet()) {
+				for (String space : org.getValue().keySet()) {
+					if (spaceList.length() > 0) {
+						spaceList.append("\n");
+					}
+					boolean current = session != null && org.getKey().equals(session.org) && space.equals(session.space);
+					spaceList.append((current ? "* " : "  ") + org.getKey() + "/" + space);
+				}
+			}
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while getting spaces from " + target));
+		}
+		return spaceList.toString();
+	}
+
+	@CliCommand(value = "cf switch-space", help = "Switch to another org and space without logging in again")
+	public String switchSpace(
+		@CliOption(key = { "org" }, optionContext = ORG_CONTEXT, mandatory = false, help = "The org to target, defaults to the current org") final String org,
+		@CliOption(key = { "space" }, optionContext = SPACE_CONTEXT, mandatory = true, help = "The space to target") final String space) {
+		if (v1 || session == null) {
+			return failed("Switching spaces is only available on v2 targets.");
+		}
+		String orgName = org == null ? session.org : org;
+		try {
+			CloudSpace sessionSpace = getSpaceIndex(false).get(orgName, space);
+			if (sessionSpace == null) {
+				return failed("Couldn't find org and space " + orgName + "/" + space + ".");
+			}
+			this.client = createClient(new CloudCredentials(session.token), sessionSpace);
+			session.setSpace(sessionSpace);
+			clearCaches();
+			names.clear();
+			registerRestLogListener();
+			saveActiveSession();
+			try {
+				sessionStore.save(session);
+			} catch (IOException e) {
+				System.out.println("Unable to save session :: " + e.getMessage());
+			}
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while switching space on " + target));
+		}
+		return "Switched to org/space: " + orgName + "/" + space;
+	}
+
+	/**
+	 * Keep the state of the active session under its alias, returning it, or null if not logged in.
+	 */
+	private CloudSession saveActiveSession() {
+		if (client == null || alias == null) {
+			return null;
+		}
+		CloudSession active = new CloudSession(alias, target, v1, user, session, client, spaceIndex, appCache, serviceCache);
+		sessions.put(alias, active);
+		return active;
+	}
+
+	/**
+	 * Make a kept session the active one.
+	 */
+	private void activate(CloudSession cloudSession) {
+		this.alias = cloudSession.alias;
+		this.target = cloudSession.target;
+		this.v1 = cloudSession.v1;
+		this.user = cloudSession.user;
+		this.session = cloudSession.session;
+		this.client = cloudSession.client;
+		this.spaceIndex = cloudSession.spaceIndex;
+		this.appCache = cloudSession.appCache;
+		this.serviceCache = cloudSession.serviceCache;
+		names.clear();
+	}
+
+	/**
+	 * Leave the active session, which stays available if it was kept, with fresh caches for the next one.
+	 */
+	private void detach() {
+		this.alias = null;
+		this.client = null;
+		this.user = null;
+		this.session = null;
+		this.spaceIndex = null;
+		this.appCache = new TtlCache<CloudApplication>(CACHE_SIZE, appCache.getTtlMillis());
+		this.serviceCache = new TtlCache<CloudService>(CACHE_SIZE, serviceCache.getTtlMillis());
+		names.clear();
+	}
+
+	/**
+	 * The kept sessions matching a comma separated list of aliases or patterns, or all of them for 'all'.
+	 */
+	private List<CloudSession> resolveSessions(String targets) {
+		saveActiveSession();
+		List<CloudSession> resolved = new ArrayList<CloudSession>();
+		for (String entry : targets.split(",")) {
+			String name = entry.trim();
+			boolean matched = false;
+			Pattern pattern = Glob.compile("all".equals(name) ? "*" : name);
+			for (CloudSession cloudSession : sessions.values()) {
+				if (pattern.matcher(cloudSession.alias).matches()) {
+					matched = true;
+					if (!resolved.contains(cloudSession)) {
+						resolved.add(cloudSession);
+					}
+				}
+			}
+			Assert.isTrue(matched || name.length() == 0, "No logged-in session matches " + name);
+		}
+		return resolved;
+	}
+
+	@CliCommand(value = "cf sessions", help = "List the logged-in sessions")
+	public String listSessions() {
+		saveActiveSession();
+		if (sessions.isEmpty()) {
+			return "No sessions.";
+		}
+		StringBuilder sessionList = new StringBuilder();
+		for (CloudSession cloudSession : sessions.values()) {
+			if (sessionList.length() > 0) {
+				sessionList.append("\n");
+			}
+			sessionList.append((cloudSession.alias.equals(alias) ? "* " : "  ") + cloudSession.alias + " :: " +
+					cloudSession.describe());
+		}
+		return sessionList.toString();
+	}
+
+	@CliCommand(value = "cf use", help = "Make another logged-in session the active one")
+	public String use(
+		@CliOption(key = { "", "alias" }, mandatory = true, help = "The session alias") final String alias) {
+		CloudSession cloudSession = sessions.get(alias);
+		if (cloudSession == null) {
+			return failed("No session named " + alias + ", the sessions are " + sessions.keySet());
+		}
+		saveActiveSession();
+		activate(cloudSession);
+		return "Using session " + alias + " :: " + cloudSession.describe();
+	}
+
+	/**
+	 * A client for the current target, decorated with the target's retry, rate and breaker policy.
+	 * Its REST log entries are timed from the start of each call to the controller, leaving out
+	 * rate limiting and backoff.
+	 */
+	private CloudFoundryOperations createClient(CloudCredentials credentials, CloudSpace space) throws MalformedURLException {
+		return ResilientClient.wrap(RestLogBuffer.timed(transport.createClient(credentials, new URL(target), space)),
+				getPolicy(target));
+	}
+
+	private ResilientClient.Policy getPolicy(String target) {
+		ResilientClient.Policy policy = policies.get(target);
+		if (policy == null) {
+			ResilientClient.Policy created = new ResilientClient.Policy(target);
+			policy = policies.putIfAbsent(target, created);
+			if (policy == null) {
+				policy = created;
+			}
+		}
+		return policy;
+	}
+
+	private SpaceIndex getSpaceIndex(boolean refresh) {
+		if (spaceIndex == null || refresh) {
+			spaceIndex = new SpaceIndex(this.client.getSpaces());
+		}
+		return spaceIndex;
+	}
+
+	private void registerRestLogListener() {
+		this.client.registerRestLogListener(new RestLogCallback() {
+			@Override
+			public void onNewLogEntry(RestLogEntry logEntry) {
+				restLog.add(logEntry);
+			}
+		});
+	}
+
 	@CliCommand(value = "cf apps", help = "List apps")
-	public String apps() {
-		String appList = "";
+	public String apps(
+		@CliOption(key = { "filter" }, mandatory = false, help = "Only list apps whose name matches this pattern, e.g. 'orders-*'") final String filter,
+		@CliOption(key = { "sort" }, mandatory = false, help = "The column to sort by") final AppSort sort,
+		@CliOption(key = { "limit" }, mandatory = false, help = "The maximum number of apps to list") final Integer limit,
+		@CliOption(key = { "targets" }, mandatory = false, help = TARGETS_HELP) final String targets) {
+		if (targets != null) {
+			return appsAcrossTargets(targets, filter, sort, limit);
+		}
+		int count;
 		try {
-			List<CloudApplication> apps = this.client.getApplications();
+			List<CloudApplication> apps = select(fetchApplications(), filter, sort == null ? null : sort.comparator, limit);
+			TableWriter table = new TableWriter(System.out, "NAME", "STATE", "INSTANCES", "MEMORY", "RUNTIME", "URIS", "SERVICES");
 			for (CloudApplication app : apps) {
-				appList = appList + (appList.length() > 0 ? "\n" : "" ) + app.getName() +
-						" " + app.getState().name() +
-						" " + app.getInstances() + " x " + app.getMemory() + "M" +
-						" " + app.getStaging().getRuntime() +
-						" " + app.getUris() +
-						" " + app.getServices();
+				table.row(app.getName(),
+						app.getState().name(),
+						app.getInstances(),
+						app.getMemory() + "M",
+						app.getStaging().getRuntime(),
+						app.getUris(),
+						app.getServices());
 			}
+			count = table.finish();
 		} catch (RuntimeException e) {
-			return "Error while getting apps from " + target + " :: " + e.getMessage();
+			return failed("Error while getting apps from " + target + " :: " + e.getMessage());
 		}
-		return appList;
+		return count + " apps listed.";
 	}
 
 	@CliCommand(value = "cf services", help = "List services")
-	public String services() {
-		String svcList = "";
+	public String services(
+		@CliOption(key = { "filter" }, mandatory = false, help = "Only list services whose name matches this pattern") final String filter,
+		@CliOption(key = { "sort" }, mandatory = false, help = "The column to sort by") final ServiceSort sort,
+		@CliOption(key = { "limit" }, mandatory = false, help = "The maximum number of services to list") final Integer limit,
+		@CliOption(key = { "targets" }, mandatory = false, help = TARGETS_HELP) final String targets) {
+		if (targets != null) {
+			return servicesAcrossTargets(targets, filter, sort, limit);
+		}
+		int count;
 		try {
-			List<CloudService> svcs = this.client.getServices();
+			List<CloudService> svcs = select(fetchServices(), filter, sort == null ? null : sort.comparator, limit);
+			TableWriter table = new TableWriter(System.out, "NAME", "SERVICE", "VERSION");
 			for (CloudService svc : svcs) {
-				svcList = svcList + (svcList.length() > 0 ? "\n" : "" ) + svc.getName() +
-						" " + (svc.getLabel() != null ? svc.getLabel() : svc.getVendor()) +
-						" " + svc.getVersion();
+				table.row(svc.getName(),
+						svc.getLabel() != null ? svc.getLabel() : svc.getVendor(),
+						svc.getVersion());
 			}
+			count = table.finish();
 		} catch (RuntimeException e) {
-			return "Error while getting services from " + target + " :: " + e.getMessage();
+			return failed("Error while getting services from " + target + " :: " + e.getMessage());
+		}
+		return count + " services listed.";
+	}
+
+	private String appsAcrossTargets(String targets, final String filter, AppSort sort, final Integer limit) {
+		final Comparator<CloudEntity> order = sort == null ? null : sort.comparator;
+		try {
+			FanOut<List<CloudApplication>> fanOut = FanOut.run(resolveSessions(targets),
+					new FanOut.Query<List<CloudApplication>>() {
+						@Override
+						public List<CloudApplication> run(CloudSession cloudSession) {
+							List<CloudApplication> apps = cloudSession.client.getApplications();
+							for (CloudApplication app : apps) {
+								cloudSession.appCache.put(app.getName(), app);
+							}
+							return select(apps, filter, order, limit);
+						}
+					});
+			TableWriter table = new TableWriter(System.out, "TARGET", "NAME", "STATE", "INSTANCES", "MEMORY", "RUNTIME", "URIS", "SERVICES");
+			for (Map.Entry<String, CloudApplication> row : merge(fanOut, order, limit)) {
+				CloudApplication app = row.getValue();
+				table.row(row.getKey(),
+						app.getName(),
+						app.getState().name(),
+						app.getInstances(),
+						app.getMemory() + "M",
+						app.getStaging().getRuntime(),
+						app.getUris(),
+						app.getServices());
+			}
+			int count = table.finish();
+			return fanOut.describe(new FanOut.Describer<List<CloudApplication>>() {
+				@Override
+				public String describe(List<CloudApplication> apps) {
+					return apps.size() + " apps";
+				}
+			}) + count + " apps listed.";
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while getting apps from " + targets));
+		}
+	}
+
+	private String servicesAcrossTargets(String targets, final String filter, ServiceSort sort, final Integer limit) {
+		final Comparator<CloudEntity> order = sort == null ? null : sort.comparator;
+		try {
+			FanOut<List<CloudService>> fanOut = FanOut.run(resolveSessions(targets),
+					new FanOut.Query<List<CloudService>>() {
+						@Override
+						public List<CloudService> run(CloudSession cloudSession) {
+							List<CloudService> services = cloudSession.client.getServices();
+							for (CloudService service : services) {
+								cloudSession.serviceCache.put(service.getName(), service);
+							}
+							return select(services, filter, order, limit);
+						}
+					});
+			TableWriter table = new TableWriter(System.out, "TARGET", "NAME", "SERVICE", "VERSION");
+			for (Map.Entry<String, CloudService> row : merge(fanOut, order, limit)) {
+				CloudService svc = row.getValue();
+				table.row(row.getKey(),
+						svc.getName(),
+						svc.getLabel() != null ? svc.getLabel() : svc.getVendor(),
+						svc.getVersion());
+			}
+			int count = table.finish();
+			return fanOut.describe(new FanOut.Describer<List<CloudService>>() {
+				@Override
+				public String describe(List<CloudService> services) {
+					return services.size() + " services";
+				}
+			}) + count + " services listed.";
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while getting services from " + targets));
+		}
+	}
+
+	/**
+	 * Merge the per-session results into rows keyed by session alias, in the given order if
+	 * there is one and otherwise session by session, keeping no more than <code>limit</code> rows.
+	 */
+	private static <T extends CloudEntity> List<Map.Entry<String, T>> merge(FanOut<List<T>> fanOut,
+			final Comparator<CloudEntity> order, Integer limit) {
+		List<Map.Entry<String, T>> rows = new ArrayList<Map.Entry<String, T>>();
+		for (String alias : fanOut.getSessions().keySet()) {
+			List<T> entities = fanOut.getResult(alias);
+			if (entities != null) {
+				for (T entity : entities) {
+					rows.add(new AbstractMap.SimpleImmutableEntry<String, T>(alias, entity));
+				}
+			}
+		}
+		if (order != null) {
+			Collections.sort(rows, new Comparator<Map.Entry<String, T>>() {
+				@Override
+				public int compare(Map.Entry<String, T> a, Map.Entry<String, T> b) {
+					return order.compare(a.getValue(), b.getValue());
+				}
+			});
 		}
-		return svcList;
+		return limit != null && rows.size() > limit ? rows.subList(0, limit) : rows;
+	}
+
+	/**
+	 * Filter, order and limit entities in a single pass; with an order and a limit only the
+	 * first <code>limit</code> entities are kept, in a bounded heap.
+	 */
+	private <T extends CloudEntity> List<T> select(List<T> entities, String filter, Comparator<CloudEntity> order,
+			Integer limit) {
+		Pattern pattern = filter == null ? null : Glob.compile(filter);
+		int max = limit == null ? Integer.MAX_VALUE : limit;
+		if (order == null) {
+			List<T> selected = new ArrayList<T>();
+			for (T entity : entities) {
+				if (selected.size() >= max) {
+					break;
+				}
+				if (pattern == null || pattern.matcher(entity.getName()).matches()) {
+					selected.add(entity);
+				}
+			}
+			return selected;
+		}
+		PriorityQueue<T> heap = new PriorityQueue<T>(Math.min(max, entities.size()) + 1, Collections.reverseOrder(order));
+		for (T entity : entities) {
+			if (pattern == null || pattern.matcher(entity.getName()).matches()) {
+				heap.add(entity);
+				if (heap.size() > max) {
+					heap.poll();
+				}
+			}
+		}
+		List<T> selected = new ArrayList<T>(heap);
+		Collections.sort(selected, order);
+		return selected;
 	}
 
 	@CliCommand(value = "cf delete-app", help = "Delete an app")
 	public String delete(
-			@CliOption(key = { "app" }, help = "The app name", mandatory = true) final String name) {
+			@CliOption(key = { "app" }, optionContext = APP_CONTEXT, help = "The app name", mandatory = false) final String name,
+			@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, help = APPS_HELP, mandatory = false) final String apps,
+			@CliOption(key = { "parallel" }, help = PARALLEL_HELP, mandatory = false, unspecifiedDefaultValue = "4") final Integer parallel,
+			@CliOption(key = { "rate" }, help = RATE_HELP, mandatory = false) final Double rate) {
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Delete", new AppAction() {
+				@Override
+				public void apply(String app) throws IOException {
+					client.deleteApplication(app);
+					appCache.invalidate(app);
+					fingerprints.remove(getAppScope(), app);
+				}
+			});
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
 			this.client.deleteApplication(name);
+			appCache.invalidate(name);
+			fingerprints.remove(getAppScope(), name);
 		} catch (Exception e) {
-			return getClientError(e, "Error while deleting app on " + target);
+			return failed(getClientError(e, "Error while deleting app on " + target));
 		}
 		return "App deleted.";
 	}
 
 	@CliCommand(value = "cf start", help = "Start an app")
 	public String start(
-			@CliOption(key = { "app" }, help = "The app name", mandatory = true) final String name) {
+			@CliOption(key = { "app" }, optionContext = APP_CONTEXT, help = "The app name", mandatory = false) final String name,
+			@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, help = APPS_HELP, mandatory = false) final String apps,
+			@CliOption(key = { "parallel" }, help = PARALLEL_HELP, mandatory = false, unspecifiedDefaultValue = "4") final Integer parallel,
+			@CliOption(key = { "rate" }, help = RATE_HELP, mandatory = false) final Double rate,
+			@CliOption(key = { "wait" }, help = WAIT_HELP, mandatory = false, specifiedDefaultValue = "300") final Integer wait) {
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Start", new AppAction() {
+				@Override
+				public void apply(String app) {
+					client.startApplication(app);
+					appCache.invalidate(app);
+				}
+			}, wait, null);
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
 			this.client.startApplication(name);
+			appCache.invalidate(name);
+			if (wait != null) {
+				return "App started.\n" + waitForRunning(Collections.singletonList(name), null, wait);
+			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while starting app on " + target);
+			return failed(getClientError(e, "Error while starting app on " + target));
 		}
 		return "App started.";
 	}
 
 	@CliCommand(value = "cf stop", help = "Stop an app")
 	public String stop(
-			@CliOption(key = { "app" }, help = "The app name", mandatory = true) final String name) {
+			@CliOption(key = { "app" }, optionContext = APP_CONTEXT, help = "The app name", mandatory = false) final String name,
+			@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, help = APPS_HELP, mandatory = false) final String apps,
+			@CliOption(key = { "parallel" }, help = PARALLEL_HELP, mandatory = false, unspecifiedDefaultValue = "4") final Integer parallel,
+			@CliOption(key = { "rate" }, help = RATE_HELP, mandatory = false) final Double rate) {
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Stop", new AppAction() {
+				@Override
+				public void apply(String app) {
+					client.stopApplication(app);
+					appCache.invalidate(app);
+				}
+			});
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
 			this.client.stopApplication(name);
+			appCache.invalidate(name);
 		} catch (Exception e) {
-			return getClientError(e, "Error while stopping app on " + target);
+			return failed(getClientError(e, "Error while stopping app on " + target));
 		}
 		return "App stopped.";
 	}
 
 	@CliCommand(value = "cf push-app", help = "Push an app")
 	public String push(
-			@CliOption(key = { "", "file" }, help = "The app file to push", mandatory = true) final File app,
+			@CliOption(key = { "", "file" }, help = "The app archive or exploded app directory to push", mandatory = true) final File app,
 			@CliOption(key = { "name" }, help = "The app name", mandatory = true) final String name,
 			@CliOption(key = { "runtime" }, help = "The app runtime", mandatory = true) final Runtimes runtime,
 			@CliOption(key = { "framework" }, help = "The app framework", mandatory = true) final Frameworks framework,
 			@CliOption(key = { "memory" }, help = "The app framework", mandatory = true) final Memory memory,
-			@CliOption(key = { "plan" }, help = "The app plan", mandatory = false, unspecifiedDefaultValue = "free") final String plan) {
+			@CliOption(key = { "plan" }, help = "The app plan", mandatory = false, unspecifiedDefaultValue = "free") final String plan,
+			@CliOption(key = { "background" }, help = BACKGROUND_HELP, mandatory = false,
+					specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean background) {
+		if (background) {
+			return startJob("cf push-app", name, new JobCommand() {
+				@Override
+				public String run(CloudFoundryCommands job) {
+					return job.push(app, name, runtime, framework, memory, plan, false);
+				}
+			});
+		}
 		try {
+			if (findApplication(name) != null) {
+				if (uploadIfChanged(name, app, false)) {
+					restartIfStarted(name);
+					return "App updated.";
+				}
+				return "App unchanged.";
+			}
 			Staging staging = new Staging(runtime.name() ,framework.name());
 			List<String> urls = new ArrayList<String>();
 			List<String> services = new ArrayList<String>();
 			this.client.createApplication(name, staging, memory.getMemory(), urls, services, plan);
-			this.client.uploadApplication(name, app);
+			appCache.invalidate(name);
+			uploadIfChanged(name, app, true);
 		} catch (Exception e) {
-			return getClientError(e, "Error while pushing app to " + target);
+			return failed(getClientError(e, "Error while pushing app to " + target));
 		}
 		return "App deployed.";
 	}
 
 	@CliCommand(value = "cf push-manifest", help = "Load and push manifest entries for aggregate apps")
 	public String pushManifest(
-			@CliOption(key = { "", "file" }, help = "The manifest file", mandatory = true) final File file) {
-		try {
-			Yaml yaml = new Yaml();
-			Reader reader = new FileReader(file);
-			Map<String, Object> manifestMap = (Map) yaml.load(reader);
-			List<Map<String, Object>> svcMaps = (List) manifestMap.get("services");
-			List<Map<String, Object>> appMaps = (List) manifestMap.get("applications");
-			for (Map<String, Object> svcMap : svcMaps) {
-				CloudService svc = null;
-				try {
-					svc = this.client.getService((String)svcMap.get("name"));
-				} catch (Exception e) {}
-				if (svc == null) {
-					System.out.println("Creating service " + svcMap);;
-					doCreateService((String)svcMap.get("name"),
-							(String)svcMap.get("label"),
-							(String)svcMap.get("plan"),
-							(String)svcMap.get("version"));
-				}
-			}
-			for (Map<String, Object> appMap : appMaps) {
-				CloudApplication app = null;
-				try {
-					app = this.client.getApplication((String)appMap.get("name"));
-				} catch (Exception e) {}
-				if (app == null) {
-					System.out.println("Creating app " + appMap);
-					Staging staging = new Staging((String)appMap.get("runtime"), (String)appMap.get("framework"));
-					List<String> urls = new ArrayList<String>((List)appMap.get("urls"));
-					List<String> services = new ArrayList<String>((List)appMap.get("services"));
-					String mem = (String)appMap.get("memory");
-					if (mem.contains("M")) {
-						mem = mem.substring(0, mem.indexOf("M"));
+			@CliOption(key = { "", "file" }, help = "The manifest file", mandatory = true) final File file,
+			@CliOption(key = { "parallel" }, help = "The number of manifest entries to push concurrently",
+					mandatory = false, unspecifiedDefaultValue = "1") final Integer parallel,
+			@CliOption(key = { "dry-run" }, help = "Print the planned changes without applying them",
+					mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "false")
+					final Boolean dryRun,
+			@CliOption(key = { "wait" }, help = WAIT_HELP, mandatory = false, specifiedDefaultValue = "300") final Integer wait,
+			@CliOption(key = { "background" }, help = BACKGROUND_HELP, mandatory = false,
+					specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean background) {
+		if (background) {
+			return startJob("cf push-manifest", file.getPath(), new JobCommand() {
+				@Override
+				public String run(CloudFoundryCommands job) {
+					return job.pushManifest(file, parallel, dryRun, wait, false);
+				}
+			});
+		}
+		TaskGraph graph = new TaskGraph();
+		List<String> pushed = new ArrayList<String>();
+		try {
+			Manifest manifest = Manifest.load(file);
+			ManifestPlan plan = ManifestPlan.forPush(manifest, fetchApplications(), fetchServices(),
+					new ManifestPlan.ChangeCheck() {
+						@Override
+						public boolean isChanged(Manifest.AppEntry appEntry) throws IOException, InterruptedException {
+							return isArchiveChanged(appEntry.name, appEntry.path);
+						}
+					});
+			if (dryRun) {
+				return plan.describe() + "Manifest push dry-run completed.";
+			}
+			Map<String, TaskGraph.Task> serviceTasks = new HashMap<String, TaskGraph.Task>();
+			for (final Manifest.ServiceEntry svcEntry : manifest.getServices()) {
+				if (plan.getServiceAction(svcEntry.name) != ManifestPlan.Action.CREATE) {
+					continue;
+				}
+				serviceTasks.put(svcEntry.name, graph.add(svcEntry.name, new Callable<Object>() {
+					@Override
+					public Object call() {
+						pushManifestService(svcEntry);
+						return null;
+					}
+				}));
+			}
+			for (final Manifest.AppEntry appEntry : manifest.getApplications()) {
+				final ManifestPlan.Action action = plan.getAppAction(appEntry.name);
+				if (action == ManifestPlan.Action.SKIP) {
+					continue;
+				}
+				List<TaskGraph.Task> dependencies = new ArrayList<TaskGraph.Task>();
+				for (String service : appEntry.services) {
+					if (serviceTasks.containsKey(service)) {
+						dependencies.add(serviceTasks.get(service));
 					}
-					this.client.createApplication((String)appMap.get("name"),
-							staging,
-							Integer.valueOf(mem),
-							urls,
-							services,
-							(String)appMap.get("plan"));
-					String appPath = (String)appMap.get("path");
-					if (!appPath.startsWith("/")) {
-						appPath = file.getParent() + "/" + appPath;
+				}
+				pushed.add(appEntry.name);
+				graph.add(appEntry.name, new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						if (action == ManifestPlan.Action.CREATE) {
+							pushManifestApp(appEntry);
+						} else {
+							updateManifestApp(appEntry);
+						}
+						return null;
 					}
-					this.client.uploadApplication((String)appMap.get("name"), new File(appPath));
-					this.client.updateApplicationInstances((String)appMap.get("name"), (Integer)appMap.get("instances"));
-					this.client.startApplication((String)appMap.get("name"));
+				}, dependencies);
+			}
+			graph.run(parallel);
+			if (wait != null) {
+				pushed.retainAll(getSucceededTasks(graph));
+				return summarizeTasks(graph, "Manifest push") + "\n" + waitForRunning(pushed, null, wait);
+			}
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while processing manifest"));
+		}
+		return summarizeTasks(graph, "Manifest push");
+	}
+
+	private void pushManifestService(Manifest.ServiceEntry svcEntry) {
+		System.out.println("Creating service " + svcEntry);
+		doCreateService(svcEntry.name, svcEntry.label, svcEntry.plan, svcEntry.version);
+	}
+
+	private void pushManifestApp(Manifest.AppEntry appEntry) throws IOException, InterruptedException {
+		System.out.println("Creating app " + appEntry);
+		Staging staging = new Staging(appEntry.runtime, appEntry.framework);
+		this.client.createApplication(appEntry.name,
+				staging,
+				appEntry.memory,
+				new ArrayList<String>(appEntry.urls),
+				new ArrayList<String>(appEntry.services),
+				appEntry.plan);
+		appCache.invalidate(appEntry.name);
+		System.out.println("Uploading app " + appEntry.name);
+		uploadIfChanged(appEntry.name, appEntry.path, true);
+		this.client.updateApplicationInstances(appEntry.name, appEntry.instances);
+		System.out.println("Starting app " + appEntry.name);
+		this.client.startApplication(appEntry.name);
+		appCache.invalidate(appEntry.name);
+	}
+
+	private void updateManifestApp(Manifest.AppEntry appEntry) throws IOException, InterruptedException {
+		System.out.println("Updating app " + appEntry.name);
+		if (uploadIfChanged(appEntry.name, appEntry.path, false)) {
+			restartIfStarted(appEntry.name);
+		}
+	}
+
+	/**
+	 * Whether an existing app's bits differ from those last uploaded. An app that has no recorded
+	 * upload, because it was pushed by another client or before fingerprints were kept, is left
+	 * alone the way push-manifest always left existing apps alone.
+	 */
+	private boolean isArchiveChanged(String name, File archive) throws IOException, InterruptedException {
+		Fingerprint previous = fingerprints.load(getAppScope(), name);
+		if (previous == null) {
+			return false;
+		}
+		String digest = archive.isDirectory() ? DirectoryArchive.build(archive).getDigest() : Fingerprint.digest(archive);
+		return !previous.archiveDigest.equals(digest);
+	}
+
+	/**
+	 * Upload the app bits, from an archive file or an exploded directory, unless they match the
+	 * fingerprint recorded for the last upload to this target. The client only sends the entries
+	 * the controller does not already have.
+	 */
+	private boolean uploadIfChanged(String name, File archive, boolean force) throws IOException, InterruptedException {
+		Fingerprint previous = fingerprints.load(getAppScope(), name);
+		DirectoryArchive directory = null;
+		String digest;
+		if (archive.isDirectory()) {
+			directory = DirectoryArchive.build(archive);
+			digest = directory.getDigest();
+		} else {
+			digest = Fingerprint.digest(archive);
+		}
+		if (!force && previous != null && previous.archiveDigest.equals(digest)) {
+			System.out.println("App " + name + " is unchanged, skipping upload");
+			return false;
+		}
+		Fingerprint current = directory != null ? Fingerprint.of(directory) : Fingerprint.of(archive);
+		if (previous != null) {
+			System.out.println("App " + name + " has " + current.countChangedEntries(previous) + " of " +
+					current.entryDigests.size() + " entries changed since the last upload");
+		}
+		if (directory != null) {
+			this.client.uploadApplication(name, directory);
+		} else {
+			this.client.uploadApplication(name, archive);
+		}
+		appCache.invalidate(name);
+		fingerprints.save(getAppScope(), name, current);
+		return true;
+	}
+
+	private void restartIfStarted(String name) {
+		if (getCachedApplication(name).getState() == CloudApplication.AppState.STARTED) {
+			System.out.println("Restarting app " + name);
+			this.client.restartApplication(name);
+			appCache.invalidate(name);
+		}
+	}
+
+	/**
+	 * The app with the given name, or null if there is no such app.
+	 */
+	private CloudApplication findApplication(String name) {
+		try {
+			return getCachedApplication(name);
+		} catch (CloudFoundryException e) {
+			if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+				return null;
+			}
+			throw e;
+		}
+	}
+
+	private String summarizeTasks(TaskGraph graph, String operation) {
+		StringBuilder summary = new StringBuilder();
+		int failures = 0;
+		for (TaskGraph.Task task : graph.getTasks()) {
+			summary.append(task.getStatus() + " " + task.getName());
+			switch (task.getStatus()) {
+				case SUCCEEDED:
+					summary.append(" (" + task.getElapsed() + " ms)");
+					break;
+				case FAILED:
+					failures++;
+					Throwable error = task.getError();
+					summary.append(" (" + task.getElapsed() + " ms) :: " + (error instanceof Exception ?
+							getClientError((Exception) error, "Error while processing " + task.getName()) : error));
+					break;
+				case SKIPPED:
+					failures++;
+					summary.append(" :: " + task.getSkippedBecauseOf().getName() + " failed");
+					break;
+				default:
+					failures++;
+			}
+			summary.append("\n");
+		}
+		if (failures > 0) {
+			summary.append(operation + " completed with " + failures + " failed or skipped entries.");
+			return failed(summary.toString());
+		}
+		summary.append(operation + " completed.");
+		return summary.toString();
+	}
+
+	/**
+	 * Resolve a comma separated list of app names and patterns such as <code>orders-*</code>
+	 * against a single snapshot of the apps.
+	 */
+	private List<String> resolveAppNames(String apps) {
+		Set<String> names = new LinkedHashSet<String>();
+		List<CloudApplication> snapshot = null;
+		for (String entry : apps.split(",")) {
+			String name = entry.trim();
+			if (name.length() == 0) {
+				continue;
+			}
+			if (Glob.isPattern(name)) {
+				if (snapshot == null) {
+					snapshot = fetchApplications();
 				}
+				Pattern pattern = Glob.compile(name);
+				for (CloudApplication app : snapshot) {
+					if (pattern.matcher(app.getName()).matches()) {
+						names.add(app.getName());
+					}
+				}
+			} else {
+				names.add(name);
+			}
+		}
+		return new ArrayList<String>(names);
+	}
+
+	/**
+	 * Apply an action to each app on a bounded worker pool, optionally starting no more than
+	 * <code>rate</code> apps per second, and report the outcome for each app.
+	 */
+	private String forEachApp(String apps, Integer parallel, Double rate, String operation, final AppAction action) {
+		return forEachApp(apps, parallel, rate, operation, action, null, null);
+	}
+
+	/**
+	 * Apply an action to each app and then, if <code>wait</code> is given, wait up to that many
+	 * seconds for the instances of the apps the action succeeded for to be running.
+	 */
+	private String forEachApp(String apps, Integer parallel, Double rate, String operation, final AppAction action,
+			Integer wait, Integer instances) {
+		Assert.isTrue(rate == null || rate > 0, "The rate must be a positive number of apps per second.");
+		TaskGraph graph = new TaskGraph();
+		try {
+			List<String> names = resolveAppNames(apps);
+			if (names.isEmpty()) {
+				return failed("No apps matched " + apps);
+			}
+			final RateLimiter limiter = rate == null ? null : new RateLimiter(rate);
+			for (final String name : names) {
+				graph.add(name, new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						if (limiter != null) {
+							limiter.acquire();
+						}
+						action.apply(name);
+						return null;
+					}
+				});
+			}
+			graph.run(parallel);
+			if (wait != null) {
+				return summarizeTasks(graph, operation) + "\n" + waitForRunning(getSucceededTasks(graph), instances, wait);
 			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while processing manifest");
+			return failed(getClientError(e, "Error while processing apps on " + target));
 		}
-		return "Manifest push completed.";
+		return summarizeTasks(graph, operation);
+	}
+
+	private List<String> getSucceededTasks(TaskGraph graph) {
+		List<String> names = new ArrayList<String>();
+		for (TaskGraph.Task task : graph.getTasks()) {
+			if (task.getStatus() == TaskGraph.Status.SUCCEEDED) {
+				names.add(task.getName());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Wait for the instances of the given apps to be running, either the number given or each
+	 * app's configured number of instances. Apps that are not started are reported and skipped.
+	 */
+	private String waitForRunning(List<String> names, Integer instances, int timeoutSeconds) throws InterruptedException {
+		InstanceWaiter waiter = new InstanceWaiter(this.client, System.out);
+		StringBuilder report = new StringBuilder();
+		int waiting = 0;
+		for (String name : names) {
+			CloudApplication app = getFreshApplication(name);
+			if (app.getState() != CloudApplication.AppState.STARTED) {
+				report.append(name + " :: not started\n");
+				continue;
+			}
+			waiter.add(name, instances != null ? instances : app.getInstances());
+			waiting++;
+		}
+		if (waiting == 0) {
+			return report + "No started apps to wait for.";
+		}
+		System.out.println("Waiting up to " + timeoutSeconds + " seconds for " + waiting + " apps to be running");
+		boolean running = waiter.await(timeoutSeconds * 1000L);
+		report.append(waiter.describe() + "\n");
+		report.append(running ? "All instances running." : "Not all instances are running.");
+		return report.toString();
+	}
+
+	@CliCommand(value = "cf wait", help = "Wait for app instances to be running")
+	public String waitFor(
+		@CliOption(key = { "app" }, optionContext = APP_CONTEXT, mandatory = false, help = "app name") final String name,
+		@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, mandatory = false, help = APPS_HELP) final String apps,
+		@CliOption(key = { "instances" }, mandatory = false, help = "The number of running instances to wait for, by default the number configured for each app") final Integer instances,
+		@CliOption(key = { "timeout" }, mandatory = false, help = "The maximum number of seconds to wait",
+				unspecifiedDefaultValue = "300") final Integer timeout) {
+		Assert.isTrue(name != null || apps != null, "An app name or list of apps is required.");
+		try {
+			List<String> names = apps != null ? resolveAppNames(apps) : Collections.singletonList(name);
+			if (names.isEmpty()) {
+				return failed("No apps matched " + apps);
+			}
+			return waitForRunning(names, instances, timeout);
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while waiting for apps on " + target));
+		}
+	}
+
+	interface AppAction {
+		void apply(String name) throws Exception;
+	}
+
+	interface JobCommand {
+		String run(CloudFoundryCommands job);
 	}
 
 	@CliCommand(value = "cf delete-manifest", help = "Load and delete manifest entries for aggregate apps")
@@ -313,38 +1245,46 @@ public class CloudFoundryCommands implements CommandMarker {
 			@CliOption(key = { "", "file" }, help = "The manifest file", mandatory = true) final File file,
 			@CliOption(key = { "deleteServices" }, help = "Delete services listed in the manifest file",
 					mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "false")
-					final Boolean deleteServices) {
-		try {
-			Yaml yaml = new Yaml();
-			Reader reader = new FileReader(file);
-			Map<String, Object> manifestMap = (Map) yaml.load(reader);
-			List<Map<String, Object>> appMaps = (List) manifestMap.get("applications");
-			for (Map<String, Object> appMap : appMaps) {
-				CloudApplication app = null;
-				try {
-					app = this.client.getApplication((String)appMap.get("name"));
-				} catch (Exception e) {}
-				if (app != null) {
-					System.out.println("Deleting app " + appMap.get("name"));
-					this.client.stopApplication((String)appMap.get("name"));
-					this.client.deleteApplication((String)appMap.get("name"));
-				}
-			}
-			if (deleteServices) {
-				List<Map<String, Object>> svcMaps = (List) manifestMap.get("services");
-				for (Map<String, Object> svcMap : svcMaps) {
-					CloudService svc = null;
-					try {
-						svc = this.client.getService((String)svcMap.get("name"));
-					} catch (Exception e) {}
-					if (svc != null) {
-						System.out.println("Deleting service " + svcMap.get("name"));;
-						this.client.deleteService((String)svcMap.get("name"));
-					}
+					final Boolean deleteServices,
+			@CliOption(key = { "dry-run" }, help = "Print the planned changes without applying them",
+					mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "false")
+					final Boolean dryRun,
+			@CliOption(key = { "background" }, help = BACKGROUND_HELP, mandatory = false,
+					specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean background) {
+		if (background) {
+			return startJob("cf delete-manifest", file.getPath(), new JobCommand() {
+				@Override
+				public String run(CloudFoundryCommands job) {
+					return job.deleteManifest(file, deleteServices, dryRun, false);
+				}
+			});
+		}
+		try {
+			Manifest manifest = Manifest.load(file);
+			ManifestPlan plan = ManifestPlan.forDelete(manifest, fetchApplications(),
+					deleteServices ? fetchServices() : Collections.<CloudService>emptyList(),
+					deleteServices);
+			if (dryRun) {
+				return plan.describe() + "Manifest delete dry-run completed.";
+			}
+			for (Manifest.AppEntry appEntry : manifest.getApplications()) {
+				if (plan.getAppAction(appEntry.name) == ManifestPlan.Action.DELETE) {
+					System.out.println("Deleting app " + appEntry.name);
+					this.client.stopApplication(appEntry.name);
+					this.client.deleteApplication(appEntry.name);
+					appCache.invalidate(appEntry.name);
+					fingerprints.remove(getAppScope(), appEntry.name);
+				}
+			}
+			for (Manifest.ServiceEntry svcEntry : manifest.getServices()) {
+				if (plan.getServiceAction(svcEntry.name) == ManifestPlan.Action.DELETE) {
+					System.out.println("Deleting service " + svcEntry.name);
+					this.client.deleteService(svcEntry.name);
+					serviceCache.invalidate(svcEntry.name);
 				}
 			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while processing manifest");
+			return failed(getClientError(e, "Error while processing manifest"));
 		}
 		return "Manifest delete completed.";
 	}
@@ -357,38 +1297,117 @@ public class CloudFoundryCommands implements CommandMarker {
 		return String.valueOf(buffer);
 	}
 
-	@CliCommand(value = "cf map", help = "Map a uri to an app")
+	@CliCommand(value = "cf map", help = "Map uris to an app")
 	public String map(
-			@CliOption(key = { "app" }, help = "The app name", mandatory = true) final String name,
-			@CliOption(key = { "uri" }, help = "The app uri to map", mandatory = true) final String uri) {
+			@CliOption(key = { "app" }, optionContext = APP_CONTEXT, help = "The app name", mandatory = false) final String name,
+			@CliOption(key = { "uri" }, help = "The app uri to map, or a comma separated list of uris", mandatory = true) final String uri,
+			@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, help = APPS_HELP, mandatory = false) final String apps,
+			@CliOption(key = { "parallel" }, help = PARALLEL_HELP, mandatory = false, unspecifiedDefaultValue = "4") final Integer parallel,
+			@CliOption(key = { "rate" }, help = RATE_HELP, mandatory = false) final Double rate) {
+		final List<String> uris = splitList(uri);
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Mapping", new AppAction() {
+				@Override
+				public void apply(String app) {
+					updateUris(getFreshApplication(app), uris, Collections.<String>emptyList());
+				}
+			});
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
-			List<String> uris = new ArrayList<String>(this.client.getApplication(name).getUris());
-			if (!uris.contains(uri)) {
-				uris.add(uri);
+			if (!updateUris(getFreshApplication(name), uris, Collections.<String>emptyList())) {
+				return uris.size() == 1 ? "URI already mapped." : "URIs already mapped.";
 			}
-			this.client.updateApplicationUris(name, uris);
 		} catch (Exception e) {
-			return getClientError(e, "Error while mapping uri to " + name + " on " + target);
+			return failed(getClientError(e, "Error while mapping uri to " + name + " on " + target));
 		}
-		return "URI mapped.";
+		return uris.size() == 1 ? "URI mapped." : uris.size() + " URIs mapped.";
 	}
 
-	@CliCommand(value = "cf unmap", help = "Unmap a uri from an app")
+	@CliCommand(value = "cf unmap", help = "Unmap uris from an app")
 	public String unmap(
-			@CliOption(key = { "app" }, help = "The app name", mandatory = true) final String name,
-			@CliOption(key = { "uri" }, help = "The app uri to un-map", mandatory = true) final String uri) {
+			@CliOption(key = { "app" }, optionContext = APP_CONTEXT, help = "The app name", mandatory = false) final String name,
+			@CliOption(key = { "uri" }, help = "The app uri to un-map, or a comma separated list of uris", mandatory = true) final String uri,
+			@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, help = APPS_HELP, mandatory = false) final String apps,
+			@CliOption(key = { "parallel" }, help = PARALLEL_HELP, mandatory = false, unspecifiedDefaultValue = "4") final Integer parallel,
+			@CliOption(key = { "rate" }, help = RATE_HELP, mandatory = false) final Double rate) {
+		final List<String> uris = splitList(uri);
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Un-mapping", new AppAction() {
+				@Override
+				public void apply(String app) {
+					updateUris(getFreshApplication(app), Collections.<String>emptyList(), uris);
+				}
+			});
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
-			List<String> uris = new ArrayList<String>(this.client.getApplication(name).getUris());
-			if (uris.contains(uri)) {
-				uris.remove(uri);
-			} else {
-				return "Error while un-mapping uri " + uri + ", it is not bound to app " + name;
+			CloudApplication current = getFreshApplication(name);
+			for (String entry : uris) {
+				if (!current.getUris().contains(entry)) {
+					return failed("Error while un-mapping uri " + entry + ", it is not bound to app " + name);
+				}
 			}
-			this.client.updateApplicationUris(name, uris);
+			updateUris(current, Collections.<String>emptyList(), uris);
 		} catch (Exception e) {
-			return getClientError(e, "Error while un-mapping uri from " + name + " on " + target);
+			return failed(getClientError(e, "Error while un-mapping uri from " + name + " on " + target));
+		}
+		return uris.size() == 1 ? "URI un-mapped." : uris.size() + " URIs un-mapped.";
+	}
+
+	/**
+	 * Add and remove uris with a single update of the app, skipping the update if nothing changes.
+	 * The app must have just been read, since its whole list of uris is written back.
+	 */
+	private boolean updateUris(CloudApplication app, List<String> add, List<String> remove) {
+		List<String> uris = applyListChanges(app.getUris(), add, remove);
+		if (uris == null) {
+			return false;
+		}
+		this.client.updateApplicationUris(app.getName(), uris);
+		appCache.invalidate(app.getName());
+		return true;
+	}
+
+	/**
+	 * Add and remove services with a single update of the app, skipping the update if nothing changes.
+	 * The app must have just been read, since its whole list of services is written back.
+	 */
+	private boolean updateServices(CloudApplication app, List<String> add, List<String> remove) {
+		List<String> services = applyListChanges(app.getServices(), add, remove);
+		if (services == null) {
+			return false;
+		}
+		this.client.updateApplicationServices(app.getName(), services);
+		appCache.invalidate(app.getName());
+		return true;
+	}
+
+	/**
+	 * A copy of the current entries with the additions and removals applied, or null if that
+	 * changes nothing.
+	 */
+	private static List<String> applyListChanges(List<String> current, List<String> add, List<String> remove) {
+		List<String> updated = new ArrayList<String>(current);
+		boolean changed = false;
+		for (String entry : add) {
+			if (!updated.contains(entry)) {
+				updated.add(entry);
+				changed = true;
+			}
+		}
+		changed |= updated.removeAll(remove);
+		return changed ? updated : null;
+	}
+
+	private static List<String> splitList(String list) {
+		List<String> entries = new ArrayList<String>();
+		for (String entry : list.split(",")) {
+			if (entry.trim().length() > 0 && !entries.contains(entry.trim())) {
+				entries.add(entry.trim());
+			}
 		}
-		return "URI un-mapped.";
+		return entries;
 	}
 
 	@CliCommand(value = "cf create-service", help = "Create a service")
@@ -400,7 +1419,7 @@ public class CloudFoundryCommands implements CommandMarker {
 		try {
 			doCreateService(name, offering, plan, version);
 		} catch (Exception e) {
-			return getClientError(e, "Error while creating service of type " + offering + " on " + target);
+			return failed(getClientError(e, "Error while creating service of type " + offering + " on " + target));
 		}
 		return "Service created.";
 	}
@@ -423,59 +1442,124 @@ public class CloudFoundryCommands implements CommandMarker {
 			service.setPlan(plan == null ? "100" : plan);
 		}
 		this.client.createService(service);
+		serviceCache.invalidate(name);
 	}
 
 	@CliCommand(value = "cf delete-service", help = "Delete a service")
 	public String deleteService(
-			@CliOption(key = { "service" }, help = "The service name", mandatory = true) final String name) {
+			@CliOption(key = { "service" }, optionContext = SERVICE_CONTEXT, help = "The service name", mandatory = true) final String name) {
 		try {
 			this.client.deleteService(name);
+			serviceCache.invalidate(name);
 		} catch (Exception e) {
-			return getClientError(e, "Error while deleting service " + name + " on " + target);
+			return failed(getClientError(e, "Error while deleting service " + name + " on " + target));
 		}
 		return "Service deleted.";
 	}
 
-	@CliCommand(value = "cf bind-service", help = "Bind a service to an app")
+	@CliCommand(value = "cf bind-service", help = "Bind services to an app")
 	public String bind(
-			@CliOption(key = { "app" }, help = "The app name", mandatory = true) final String name,
-			@CliOption(key = { "service" }, help = "The service to bind to app", mandatory = true) final String service) {
+			@CliOption(key = { "app" }, optionContext = APP_CONTEXT, help = "The app name", mandatory = false) final String name,
+			@CliOption(key = { "service" }, optionContext = SERVICE_CONTEXT, help = "The service to bind to app, or a comma separated list of services", mandatory = true) final String service,
+			@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, help = APPS_HELP, mandatory = false) final String apps,
+			@CliOption(key = { "parallel" }, help = PARALLEL_HELP, mandatory = false, unspecifiedDefaultValue = "4") final Integer parallel,
+			@CliOption(key = { "rate" }, help = RATE_HELP, mandatory = false) final Double rate) {
+		final List<String> services = splitList(service);
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Binding", new AppAction() {
+				@Override
+				public void apply(String app) {
+					updateServices(getFreshApplication(app), services, Collections.<String>emptyList());
+				}
+			});
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
-			List<String> services = new ArrayList<String>(this.client.getApplication(name).getServices());
-			if (!services.contains(service)) {
-				services.add(service);
+			if (!updateServices(getFreshApplication(name), services, Collections.<String>emptyList())) {
+				return services.size() == 1 ? "Service already bound." : "Services already bound.";
 			}
-			this.client.updateApplicationServices(name, services);
 		} catch (Exception e) {
-			return getClientError(e, "Error while binding service to " + name + " on " + target);
+			return failed(getClientError(e, "Error while binding service to " + name + " on " + target));
 		}
-		return "Service bound.";
+		return services.size() == 1 ? "Service bound." : services.size() + " services bound.";
 	}
 
-	@CliCommand(value = "cf unbind-service", help = "Un-bind a service from an app")
+	@CliCommand(value = "cf unbind-service", help = "Un-bind services from an app")
 	public String unbind(
-			@CliOption(key = { "app" }, help = "The app name", mandatory = true) final String name,
-			@CliOption(key = { "service" }, help = "The service to un-bind from app", mandatory = true) final String service) {
+			@CliOption(key = { "app" }, optionContext = APP_CONTEXT, help = "The app name", mandatory = false) final String name,
+			@CliOption(key = { "service" }, optionContext = SERVICE_CONTEXT, help = "The service to un-bind from app, or a comma separated list of services", mandatory = true) final String service,
+			@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, help = APPS_HELP, mandatory = false) final String apps,
+			@CliOption(key = { "parallel" }, help = PARALLEL_HELP, mandatory = false, unspecifiedDefaultValue = "4") final Integer parallel,
+			@CliOption(key = { "rate" }, help = RATE_HELP, mandatory = false) final Double rate) {
+		final List<String> services = splitList(service);
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Un-binding", new AppAction() {
+				@Override
+				public void apply(String app) {
+					updateServices(getFreshApplication(app), Collections.<String>emptyList(), services);
+				}
+			});
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
-			List<String> services = new ArrayList<String>(this.client.getApplication(name).getServices());
-			if (services.contains(service)) {
-				services.remove(service);
-			} else {
-				return "Error while un-binding service " + service + ", it is not bound to app " + name;
+			CloudApplication current = getFreshApplication(name);
+			for (String entry : services) {
+				if (!current.getServices().contains(entry)) {
+					return failed("Error while un-binding service " + entry + ", it is not bound to app " + name);
+				}
 			}
-			this.client.updateApplicationServices(name, services);
+			updateServices(current, Collections.<String>emptyList(), services);
 		} catch (Exception e) {
-			return getClientError(e, "Error while unbinding service from " + name + " on " + target);
+			return failed(getClientError(e, "Error while unbinding service from " + name + " on " + target));
 		}
-		return "Service un-bound.";
+		return services.size() == 1 ? "Service un-bound." : services.size() + " services un-bound.";
 	}
 
 	@CliCommand(value = "cf stats", help = "Print app status")
 	public String stats(
-		@CliOption(key = { "app" }, mandatory = true, help = "app name") final String name) {
+		@CliOption(key = { "app" }, optionContext = APP_CONTEXT, mandatory = false, help = "app name") final String name,
+		@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, mandatory = false, help = APPS_HELP) final String apps,
+		@CliOption(key = { "watch" }, mandatory = false, help = "Keep refreshing the status until Enter is pressed",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean watch,
+		@CliOption(key = { "interval" }, mandatory = false, help = "The number of seconds between refreshes with --watch",
+				unspecifiedDefaultValue = "2") final Integer interval,
+		@CliOption(key = { "timeout" }, mandatory = false, help = "Stop watching after this many seconds",
+				unspecifiedDefaultValue = "0") final Integer timeout,
+		@CliOption(key = { "targets" }, mandatory = false, help = TARGETS_HELP) final String targets) {
+		Assert.isTrue(name != null || apps != null, "An app name or list of apps is required.");
+		if (targets != null) {
+			Assert.isTrue(name != null && !watch, "Stats across targets need a single --app and no --watch.");
+			return statsAcrossTargets(targets, name);
+		}
+		if (watch && timeout == 0 && !interactive) {
+			return failed("Error: --watch needs a --timeout when run through the daemon.");
+		}
+		if (watch || apps != null) {
+			List<String> names = new ArrayList<String>();
+			for (String entry : (apps != null ? apps : name).split(",")) {
+				if (entry.trim().length() > 0) {
+					names.add(entry.trim());
+				}
+			}
+			StatsWatcher watcher = new StatsWatcher(this.client, names, System.out, System.console() != null);
+			try {
+				if (!watch) {
+					StringBuilder rows = new StringBuilder();
+					for (String row : watcher.refresh()) {
+						rows.append(rows.length() > 0 ? "\n" : "").append(row);
+					}
+					return rows.toString();
+				}
+				System.out.println("Watching " + (apps != null ? apps : name) + ", press Enter to stop.");
+				watcher.watch(interval * 1000L, timeout * 1000L, System.in);
+			} catch (Exception e) {
+				return failed(getClientError(e, "Error while watching status on " + target));
+			}
+			return "Stopped watching.";
+		}
 		StringBuilder status = new StringBuilder();
 		try {
-			CloudApplication app = this.client.getApplication(name);
+			CloudApplication app = getCachedApplication(name);
 			InstancesInfo instancesInfo = this.client.getApplicationInstances(name);
 			status.append(app.getName() + " :: ");
 			status.append(app.getState() + "\n");
@@ -494,40 +1578,106 @@ public class CloudFoundryCommands implements CommandMarker {
 				}
 			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while getting status for " + name + " on " + target);
+			return failed(getClientError(e, "Error while getting status for " + name + " on " + target));
 		}
 		return status.toString();
 	}
 
+	private String statsAcrossTargets(String targets, final String name) {
+		try {
+			FanOut<CloudApplication> fanOut = FanOut.run(resolveSessions(targets), new FanOut.Query<CloudApplication>() {
+				@Override
+				public CloudApplication run(CloudSession cloudSession) {
+					CloudApplication app = cloudSession.client.getApplication(name);
+					cloudSession.appCache.put(name, app);
+					return app;
+				}
+			});
+			TableWriter table = new TableWriter(System.out, "TARGET", "STATE", "RUNNING", "MEMORY", "PLAN", "URIS", "SERVICES");
+			for (String alias : fanOut.getSessions().keySet()) {
+				CloudApplication app = fanOut.getResult(alias);
+				if (app != null) {
+					table.row(alias,
+							app.getState(),
+							app.getRunningInstances() + "/" + app.getInstances(),
+							app.getMemory() + "M",
+							app.getPlan(),
+							app.getUris(),
+							app.getServices());
+				}
+			}
+			table.finish();
+			return fanOut.describe(new FanOut.Describer<CloudApplication>() {
+				@Override
+				public String describe(CloudApplication app) {
+					return String.valueOf(app.getState());
+				}
+			}) + "Stats for " + name + " listed.";
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while getting status for " + name + " on " + targets));
+		}
+	}
+
 	@CliCommand(value = "cf scale", help = "Scale app")
 	public String scale(
-		@CliOption(key = { "app" }, mandatory = true, help = "app name") final String name,
+		@CliOption(key = { "app" }, optionContext = APP_CONTEXT, mandatory = false, help = "app name") final String name,
 		@CliOption(key = { "instances" }, mandatory = false, help = "app instances") final Integer instances,
 		@CliOption(key = { "memory" }, mandatory = false, help = "app memory") final Integer memory,
-		@CliOption(key = { "plan" }, mandatory = false, help = "app plan") final String plan) {
+		@CliOption(key = { "plan" }, mandatory = false, help = "app plan") final String plan,
+		@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, mandatory = false, help = APPS_HELP) final String apps,
+		@CliOption(key = { "parallel" }, mandatory = false, help = PARALLEL_HELP, unspecifiedDefaultValue = "4") final Integer parallel,
+		@CliOption(key = { "rate" }, mandatory = false, help = RATE_HELP) final Double rate,
+		@CliOption(key = { "wait" }, mandatory = false, help = WAIT_HELP, specifiedDefaultValue = "300") final Integer wait,
+		@CliOption(key = { "background" }, mandatory = false, help = BACKGROUND_HELP,
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean background) {
+		if (background) {
+			return startJob("cf scale", apps != null ? apps : name, new JobCommand() {
+				@Override
+				public String run(CloudFoundryCommands job) {
+					return job.scale(name, instances, memory, plan, apps, parallel, rate, wait, false);
+				}
+			});
+		}
+		if (apps != null) {
+			return forEachApp(apps, parallel, rate, "Scaling", new AppAction() {
+				@Override
+				public void apply(String app) {
+					doScale(app, instances, memory, plan);
+				}
+			}, wait, instances);
+		}
+		Assert.notNull(name, "An app name or list of apps is required.");
 		try {
-			CloudApplication app = this.client.getApplication(name);
-			if (plan != null) {
-				this.client.updateApplicationPlan(name, plan);
-			}
-			if (memory != null) {
-				this.client.updateApplicationMemory(name, memory);
-			}
-			if (instances != null) {
-				this.client.updateApplicationInstances(name, instances);
+			doScale(name, instances, memory, plan);
+			if (wait != null) {
+				return "Scaling complete.\n" + waitForRunning(Collections.singletonList(name), instances, wait);
 			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while scaling " + name + " on " + target);
+			return failed(getClientError(e, "Error while scaling " + name + " on " + target));
 		}
 		return "Scaling complete.";
 	}
 
+	private void doScale(String name, Integer instances, Integer memory, String plan) {
+		getCachedApplication(name);
+		if (plan != null) {
+			this.client.updateApplicationPlan(name, plan);
+		}
+		if (memory != null) {
+			this.client.updateApplicationMemory(name, memory);
+		}
+		if (instances != null) {
+			this.client.updateApplicationInstances(name, instances);
+		}
+		appCache.invalidate(name);
+	}
+
 	@CliCommand(value = "cf env", help = "Print app environment variables")
 	public String env(
-		@CliOption(key = { "app" }, mandatory = true, help = "app name") final String name) {
+		@CliOption(key = { "app" }, optionContext = APP_CONTEXT, mandatory = true, help = "app name") final String name) {
 		StringBuilder envOutput = new StringBuilder();
 		try {
-			CloudApplication app = this.client.getApplication(name);
+			CloudApplication app = getCachedApplication(name);
 			for (String var : app.getEnvAsMap().keySet()) {
 				if (envOutput.length() > 0) {
 					envOutput.append("\n");
@@ -536,30 +1686,43 @@ public class CloudFoundryCommands implements CommandMarker {
 				envOutput.append(app.getEnvAsMap().get(var));
 			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while getting environment for " + name + " on " + target);
+			return failed(getClientError(e, "Error while getting environment for " + name + " on " + target));
 		}
 		return envOutput.toString();
 	}
 
 	@CliCommand(value = "cf set-env", help = "Set app environment variables")
 	public String setEnv(
-		@CliOption(key = { "app" }, mandatory = true, help = "app name") final String appName,
-		@CliOption(key = { "name" }, mandatory = true, help = "app name") final String name,
-		@CliOption(key = { "value" }, mandatory = false, help = "app name") final String value) {
-		try {
-			CloudApplication app = this.client.getApplication(appName);
-			Map<String, String> env = app.getEnvAsMap();
-			if (value == null || value.length() == 0) {
-				env.remove(name);
-			} else {
-				env.put(name, value);
+		@CliOption(key = { "app" }, optionContext = APP_CONTEXT, mandatory = true, help = "app name") final String appName,
+		@CliOption(key = { "name" }, mandatory = false, help = "The variable name") final String name,
+		@CliOption(key = { "value" }, mandatory = false, help = "The variable value, empty to un-set it") final String value,
+		@CliOption(key = { "vars" }, mandatory = false, help = "Comma separated name=value pairs, an empty value un-sets the variable") final String vars,
+		@CliOption(key = { "file" }, mandatory = false, help = "A properties or YAML file with the variables to set") final File file) {
+		EnvChanges changes = new EnvChanges();
+		try {
+			if (name != null) {
+				changes.set(name, value);
+			}
+			if (vars != null) {
+				changes.parsePairs(vars);
+			}
+			if (file != null) {
+				changes.load(file);
+			}
+			Assert.isTrue(!changes.isEmpty(), "A variable name, --vars or --file is required.");
+			CloudApplication app = getFreshApplication(appName);
+			Map<String, String> env = changes.applyTo(app.getEnvAsMap());
+			if (!changes.hasChanges()) {
+				return "Environment unchanged.";
 			}
 			this.client.updateApplicationEnv(appName, env);
-
+			appCache.invalidate(appName);
 		} catch (Exception e) {
-			return getClientError(e, "Error while updating environment for " + name + " on " + target);
+			return failed(getClientError(e, "Error while updating environment for " + appName + " on " + target));
 		}
-		if (value == null || value.length() == 0) {
+		if (changes.size() > 1 || name == null) {
+			return changes.describe() + changes.size() + " environment variables updated.";
+		} else if (value == null || value.length() == 0) {
 			return "Environment variable un-set.";
 		} else {
 			return "Environment variable set.";
@@ -568,9 +1731,41 @@ public class CloudFoundryCommands implements CommandMarker {
 
 	@CliCommand(value = "cf logs", help = "Print app logs")
 	public String logs(
-		@CliOption(key = { "app" }, mandatory = true, help = "app name") final String name) {
+		@CliOption(key = { "app" }, optionContext = APP_CONTEXT, mandatory = false, help = "app name") final String name,
+		@CliOption(key = { "follow" }, mandatory = false, help = "Keep printing new log lines until Enter is pressed",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean follow,
+		@CliOption(key = { "instance" }, mandatory = false, help = "The instance index to read logs from with --follow or --file") final Integer instance,
+		@CliOption(key = { "file" }, mandatory = false, help = "Only show this log file, e.g. stdout.log") final String file,
+		@CliOption(key = { "timeout" }, mandatory = false, help = "Stop following after this many seconds",
+				unspecifiedDefaultValue = "0") final Integer timeout,
+		@CliOption(key = { "apps" }, optionContext = APP_CONTEXT, mandatory = false, help = "Search the logs of these apps: a comma separated list of names or patterns such as 'web-*'") final String apps,
+		@CliOption(key = { "grep" }, mandatory = false, help = "Only show the stored log lines matching this regular expression") final String grep,
+		@CliOption(key = { "since" }, mandatory = false, help = "Only show the stored log lines written in this period, e.g. 30s, 10m, 2h or 1d") final String since,
+		@CliOption(key = { "tail" }, mandatory = false, help = "Only show this many of the last matching stored log lines") final Integer tail,
+		@CliOption(key = { "offline" }, mandatory = false, help = "Search the stored logs without fetching what was added since the last search",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean offline,
+		@CliOption(key = { "parallel" }, mandatory = false, help = PARALLEL_HELP,
+				unspecifiedDefaultValue = "4") final Integer parallel) {
+		if (name == null && apps == null) {
+			return failed("Specify an app with --app or apps with --apps");
+		}
+		if (apps != null || grep != null || since != null || tail != null || offline) {
+			return searchLogs(apps != null ? apps : name, grep, since, tail, offline, parallel);
+		}
+		if (follow && timeout == 0 && !interactive) {
+			return failed("Error: --follow needs a --timeout when run through the daemon.");
+		}
 		StringBuilder logOutput = new StringBuilder();
 		try {
+			if (follow) {
+				System.out.println("Following logs for " + name + ", press Enter to stop.");
+				new LogFollower(this.client, name, instance, file, System.out).follow(timeout * 1000L, System.in);
+				return "Stopped following logs.";
+			}
+			if (file != null) {
+				String path = file.contains("/") ? file : "logs/" + file;
+				return this.client.getFile(name, instance == null ? 0 : instance, path);
+			}
 			Map<String, String> logs = this.client.getLogs(name);
 			if (logs != null && logs.size() > 0) {
 				for (String log : logs.keySet()) {
@@ -584,14 +1779,91 @@ public class CloudFoundryCommands implements CommandMarker {
 				logOutput.append("No logs found.");
 			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while getting logs for " + name + " on " + target);
+			return failed(getClientError(e, "Error while getting logs for " + name + " on " + target));
 		}
 		return logOutput.toString();
 	}
 
+	/**
+	 * Bring the stored logs of the apps up to date, unless offline, and print the stored lines
+	 * that match from all their instances and log files in the order they were written.
+	 */
+	private String searchLogs(String apps, String grep, String since, Integer tail, boolean offline, Integer parallel) {
+		Pattern pattern;
+		long sinceMillis;
+		try {
+			pattern = grep == null ? null : Pattern.compile(grep);
+			sinceMillis = since == null ? 0 : System.currentTimeMillis() - parseDuration(since);
+		} catch (IllegalArgumentException e) {
+			return failed("Error: " + e.getMessage());
+		}
+		try {
+			List<String> names = offline ? splitList(apps) : resolveAppNames(apps);
+			if (names.isEmpty()) {
+				return failed("No apps matched " + apps);
+			}
+			if (!offline) {
+				final CloudFoundryOperations client = this.client;
+				final String scope = getAppScope();
+				TaskGraph graph = new TaskGraph();
+				for (final String name : names) {
+					graph.add(name, new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							return logStore.refresh(client, scope, name);
+						}
+					});
+				}
+				graph.run(parallel);
+				for (TaskGraph.Task task : graph.getTasks()) {
+					if (task.getStatus() != TaskGraph.Status.SUCCEEDED) {
+						System.out.println(getClientError(task.getError() instanceof Exception ? (Exception) task.getError() :
+								new RuntimeException(task.getError()), "Error while fetching logs for " + task.getName() +
+								", searching the stored logs"));
+					}
+				}
+			}
+			List<LogStore.Line> lines = logStore.query(getAppScope(), names, pattern, sinceMillis, tail);
+			if (lines.isEmpty()) {
+				return offline ? "No stored log lines found, search without --offline to fetch them." : "No log lines found.";
+			}
+			StringBuilder logOutput = new StringBuilder();
+			for (LogStore.Line line : lines) {
+				if (logOutput.length() > 0) {
+					logOutput.append("\n");
+				}
+				logOutput.append("[" + line.source + "] " + line.text);
+			}
+			return logOutput.toString();
+		} catch (Exception e) {
+			return failed(getClientError(e, "Error while searching logs for " + apps + " on " + target));
+		}
+	}
+
+	/**
+	 * The length in milliseconds of a period such as <code>30s</code>, <code>10m</code>,
+	 * <code>2h</code> or <code>1d</code>; a plain number is taken as seconds.
+	 */
+	static long parseDuration(String duration) {
+		Matcher matcher = Pattern.compile("(\\d+)\\s*([smhd]?)").matcher(duration.trim().toLowerCase());
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Invalid period " + duration + ", use for example 30s, 10m, 2h or 1d");
+		}
+		long amount = Long.parseLong(matcher.group(1));
+		String unit = matcher.group(2);
+		if ("m".equals(unit)) {
+			return amount * 60000L;
+		} else if ("h".equals(unit)) {
+			return amount * 3600000L;
+		} else if ("d".equals(unit)) {
+			return amount * 86400000L;
+		}
+		return amount * 1000L;
+	}
+
 	@CliCommand(value = "cf crashlogs", help = "Print app crash logs")
 	public String crashlogs(
-		@CliOption(key = { "app" }, mandatory = true, help = "app name") final String name) {
+		@CliOption(key = { "app" }, optionContext = APP_CONTEXT, mandatory = true, help = "app name") final String name) {
 		StringBuilder logOutput = new StringBuilder();
 		try {
 			Map<String, String> logs = this.client.getCrashLogs(name);
@@ -607,7 +1879,7 @@ public class CloudFoundryCommands implements CommandMarker {
 				logOutput.append("No crashlogs found.");
 			}
 		} catch (Exception e) {
-			return getClientError(e, "Error while getting crash logs for " + name + " on " + target);
+			return failed(getClientError(e, "Error while getting crash logs for " + name + " on " + target));
 		}
 		return logOutput.toString();
 	}
@@ -615,10 +1887,16 @@ public class CloudFoundryCommands implements CommandMarker {
 	@CliCommand(value = "cf restlog", help = "Print or clear REST logs")
 	public String restlog(
 		@CliOption(key = { "print" }, mandatory = false, help = "Print log entries", unspecifiedDefaultValue = "true") final boolean print,
-		@CliOption(key = { "clear" }, mandatory = false, help = "Clear log entries", unspecifiedDefaultValue = "false") final boolean clear) {
+		@CliOption(key = { "clear" }, mandatory = false, help = "Clear log entries", unspecifiedDefaultValue = "false") final boolean clear,
+		@CliOption(key = { "stats" }, mandatory = false, help = "Print request counts, error rates and latencies per endpoint",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean stats) {
 		StringBuilder logOutput = new StringBuilder();
-		if (print) {
-			for (RestLogEntry entry : logEntries) {
+		if (stats) {
+			logOutput.append(restLog.stats());
+			logOutput.append("\n" + transport.stats());
+		} else if (print) {
+			for (RestLogBuffer.Record record : restLog.snapshot()) {
+				RestLogEntry entry = record.entry;
 				if (logOutput.length() > 0) {
 					logOutput.append("\n");
 				}
@@ -626,7 +1904,7 @@ public class CloudFoundryCommands implements CommandMarker {
 			}
 		}
 		if (clear) {
-			logEntries.clear();
+			restLog.clear();
 			if (logOutput.length() == 0) {
 				logOutput.append("Cleared logs.");
 			}
@@ -634,6 +1912,287 @@ public class CloudFoundryCommands implements CommandMarker {
 		return logOutput.toString();
 	}
 
+	/**
+	 * Queue a command as a background job. The job runs on a copy of these commands bound to the
+	 * session as it is now, so switching session, space or target or logging out while it is
+	 * queued or running does not send it anywhere else. The job records its own metrics under
+	 * the command's name, in place of the invocation that only queued it.
+	 */
+	private String startJob(final String commandName, String subject, final JobCommand work) {
+		final String command = commandName + " " + subject;
+		if (client == null) {
+			return failed("Error: log in before starting a background job.");
+		}
+		final CloudFoundryCommands copy = new CloudFoundryCommands(this, new CloudSession(alias, target, v1, user,
+				session, client, spaceIndex, appCache, serviceCache));
+		BackgroundJobs.Job job = jobs.submit(command, new Callable<String>() {
+			@Override
+			public String call() throws BackgroundJobs.Failed {
+				Invocation started = new Invocation();
+				copy.invocation.set(started);
+				String result = null;
+				try {
+					result = work.run(copy);
+				} finally {
+					metrics.record(commandName, System.nanoTime() - started.start, result == null || started.failed,
+							started.restCalls.get());
+					copy.invocation.remove();
+					RestLogBuffer.stopCounting();
+					invalidateNamesAfter(commandName);
+				}
+				if (started.failed) {
+					throw new BackgroundJobs.Failed(result);
+				}
+				return result;
+			}
+		});
+		invocation.remove();
+		return "Started job " + job.id + ": " + command + ", check on it with cf job-status --id " + job.id;
+	}
+
+	@CliCommand(value = "cf jobs", help = "List the background jobs of this session")
+	public String listJobs(
+		@CliOption(key = { "clear" }, mandatory = false, help = "Forget the jobs that have finished",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean clear) {
+		if (clear) {
+			return "Removed " + jobs.removeFinished() + " finished jobs.";
+		}
+		TableWriter table = new TableWriter(System.out, "ID", "STATUS", "ELAPSED(s)", "COMMAND", "LAST OUTPUT");
+		for (BackgroundJobs.Job job : jobs.getAll()) {
+			table.row(job.id, job.getStatus(), job.getElapsed() / 1000, job.command, job.getLastLine());
+		}
+		return table.finish() + " jobs.";
+	}
+
+	@CliCommand(value = "cf job-status", help = "Show the status and captured output of a background job")
+	public String jobStatus(
+		@CliOption(key = { "", "id" }, mandatory = true, help = "The job id") final Integer id) {
+		BackgroundJobs.Job job = jobs.get(id);
+		if (job == null) {
+			return failed("No job with id " + id);
+		}
+		StringBuilder status = new StringBuilder();
+		status.append("Job " + job.id + " " + job.getStatus() + " after " + job.getElapsed() / 1000 + " s :: " + job.command);
+		String output = job.getOutput();
+		if (output.length() > 0) {
+			status.append("\n" + output.trim());
+		}
+		if (job.getResult() != null) {
+			status.append("\n" + job.getResult());
+		}
+		return status.toString();
+	}
+
+	@CliCommand(value = "cf job-cancel", help = "Cancel a queued or running background job")
+	public String jobCancel(
+		@CliOption(key = { "", "id" }, mandatory = true, help = "The job id") final Integer id) {
+		BackgroundJobs.Job job = jobs.get(id);
+		if (job == null) {
+			return failed("No job with id " + id);
+		}
+		if (!job.cancel()) {
+			return "Job " + id + " already " + job.getStatus() + ".";
+		}
+		return "Cancelled job " + id + ". Changes it already made are kept.";
+	}
+
+	@CliCommand(value = "cf metrics", help = "Show the latency, error and REST request counts of the commands run so far")
+	public String metrics(
+		@CliOption(key = { "reset" }, mandatory = false, help = "Reset the metrics",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean reset) {
+		if (reset) {
+			metrics.reset();
+			return "Metrics reset.";
+		}
+		TableWriter table = new TableWriter(System.out, "COMMAND", "CALLS", "ERRORS", "MEAN(ms)", "P50(ms)", "P95(ms)",
+				"P99(ms)", "MAX(ms)", "REST", "REST/CALL");
+		for (CommandMetrics.CommandStats stats : metrics.getAll()) {
+			table.row(stats.getCommand(),
+					stats.getCalls(),
+					stats.getErrors(),
+					String.format("%.1f", stats.getMeanMillis()),
+					String.format("%.1f", stats.getP50Millis()),
+					String.format("%.1f", stats.getP95Millis()),
+					String.format("%.1f", stats.getP99Millis()),
+					String.format("%.1f", stats.getMaxMillis()),
+					stats.getRestCalls(),
+					String.format("%.1f", stats.getRestCallsPerCall()));
+		}
+		StringBuilder clients = new StringBuilder();
+		for (ResilientClient.Policy policy : policies.values()) {
+			clients.append(policy.describe() + "\n");
+		}
+		return clients + (table.finish() + " commands timed. The same metrics are available over JMX under " +
+				CommandMetrics.DOMAIN + ":type=CommandMetrics.");
+	}
+
+	@CliCommand(value = "cf resilience", help = "Show or change how calls to the current target are retried, rate limited and suspended")
+	public String resilience(
+		@CliOption(key = { "retries" }, mandatory = false, help = "The number of times to retry a call that failed with a transient error") final Integer retries,
+		@CliOption(key = { "backoff" }, mandatory = false, help = "The delay in milliseconds before the first retry, doubled for each further retry") final Long backoff,
+		@CliOption(key = { "rate" }, mandatory = false, help = "The maximum number of calls per second to the target, 0 for no limit") final Double rate,
+		@CliOption(key = { "breaker-threshold" }, mandatory = false, help = "The number of failures in a row that suspends calls to the target") final Integer threshold,
+		@CliOption(key = { "breaker-cool-down" }, mandatory = false, help = "The number of seconds calls stay suspended") final Integer coolDown,
+		@CliOption(key = { "reset" }, mandatory = false, help = "Reset the counts",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean reset) {
+		ResilientClient.Policy policy = getPolicy(target);
+		if (retries != null) {
+			Assert.isTrue(retries >= 0, "Retries can't be negative.");
+			policy.retries = retries;
+		}
+		if (backoff != null) {
+			Assert.isTrue(backoff > 0, "Backoff must be positive.");
+			policy.baseDelay = backoff;
+		}
+		if (rate != null) {
+			Assert.isTrue(rate >= 0, "The rate can't be negative.");
+			policy.setRate(rate > 0 ? rate : null);
+		}
+		if (threshold != null) {
+			Assert.isTrue(threshold > 0, "Breaker threshold must be positive.");
+			policy.breakerThreshold = threshold;
+		}
+		if (coolDown != null) {
+			policy.breakerCoolDown = coolDown * 1000L;
+		}
+		if (reset) {
+			policy.resetCounts();
+		}
+		return "Retries: " + policy.retries + " starting at " + policy.baseDelay + " ms\n" +
+				"Rate limit: " + (policy.getRate() == null ? "none" : policy.getRate() + " calls per second") + "\n" +
+				"Breaker: opens after " + policy.breakerThreshold + " failures in a row for " +
+				policy.breakerCoolDown / 1000 + " s\n" +
+				policy.describe();
+	}
+
+	@CliCommand(value = "cf cache", help = "Show or clear the cached app and service metadata")
+	public String cache(
+		@CliOption(key = { "stats" }, mandatory = false, help = "Print cache statistics",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "true") final boolean stats,
+		@CliOption(key = { "clear" }, mandatory = false, help = "Clear cached entries",
+				specifiedDefaultValue = "true", unspecifiedDefaultValue = "false") final boolean clear,
+		@CliOption(key = { "ttl" }, mandatory = false, help = "Time to live for cached entries in seconds") final Integer ttl) {
+		StringBuilder cacheOutput = new StringBuilder();
+		if (ttl != null) {
+			appCache.setTtlMillis(ttl * 1000L);
+			serviceCache.setTtlMillis(ttl * 1000L);
+			appCache.purgeExpired();
+			serviceCache.purgeExpired();
+		}
+		if (stats) {
+			cacheOutput.append("apps: " + appCache.stats() + "\n");
+			cacheOutput.append("services: " + serviceCache.stats());
+		}
+		if (clear) {
+			clearCaches();
+			if (cacheOutput.length() > 0) {
+				cacheOutput.append("\n");
+			}
+			cacheOutput.append("Cleared cache.");
+		}
+		return cacheOutput.toString();
+	}
+
+	/**
+	 * Where the apps of the active session live, which keys what the shell keeps for each app.
+	 */
+	private String getAppScope() {
+		return session != null ? session.getAppScope() : target;
+	}
+
+	private CloudApplication getCachedApplication(String name) {
+		CloudApplication app = appCache.get(name);
+		if (app == null) {
+			app = this.client.getApplication(name);
+			appCache.put(name, app);
+		}
+		return app;
+	}
+
+	/**
+	 * The app as the controller has it now, for commands that write back a whole list or map of
+	 * the app's settings and would otherwise drop changes made since it was cached.
+	 */
+	private CloudApplication getFreshApplication(String name) {
+		CloudApplication app = this.client.getApplication(name);
+		appCache.put(name, app);
+		return app;
+	}
+
+	private List<CloudApplication> fetchApplications() {
+		List<CloudApplication> apps = this.client.getApplications();
+		for (CloudApplication app : apps) {
+			appCache.put(app.getName(), app);
+		}
+		return apps;
+	}
+
+	private List<CloudService> fetchServices() {
+		List<CloudService> services = this.client.getServices();
+		for (CloudService service : services) {
+			serviceCache.put(service.getName(), service);
+		}
+		return services;
+	}
+
+	/**
+	 * The app, service, org or space names of the given session for completion, or none while not
+	 * logged in. Runs in the background, so it only touches the session it is given.
+	 */
+	private static List<String> loadNames(NameIndex.Kind kind, CloudSession cloudSession) {
+		List<String> loaded = new ArrayList<String>();
+		if (cloudSession.client == null) {
+			return loaded;
+		}
+		switch (kind) {
+			case APP:
+				for (CloudApplication app : cloudSession.client.getApplications()) {
+					cloudSession.appCache.put(app.getName(), app);
+					loaded.add(app.getName());
+				}
+				break;
+			case SERVICE:
+				for (CloudService service : cloudSession.client.getServices()) {
+					cloudSession.serviceCache.put(service.getName(), service);
+					loaded.add(service.getName());
+				}
+				break;
+			default:
+				if (cloudSession.v1) {
+					break;
+				}
+				SpaceIndex spaces = cloudSession.spaceIndex != null ? cloudSession.spaceIndex :
+						new SpaceIndex(cloudSession.client.getSpaces());
+				Set<String> spaceNames = new TreeSet<String>();
+				for (Map.Entry<String, Map<String, CloudSpace>> org : spaces.getOrgs().entrySet()) {
+					loaded.add(org.getKey());
+					spaceNames.addAll(org.getValue().keySet());
+				}
+				if (kind == NameIndex.Kind.SPACE) {
+					loaded = new ArrayList<String>(spaceNames);
+				}
+		}
+		Collections.sort(loaded);
+		return loaded;
+	}
+
+	/**
+	 * Mark stale the names used for completion that a command may have changed, so they are
+	 * reloaded when completion next needs them rather than after every command.
+	 */
+	private void invalidateNamesAfter(String command) {
+		if (command.startsWith("cf push-") || command.startsWith("cf delete-")) {
+			names.invalidate(NameIndex.Kind.APP, NameIndex.Kind.SERVICE);
+		} else if (command.startsWith("cf create-service")) {
+			names.invalidate(NameIndex.Kind.SERVICE);
+		}
+	}
+
+	private void clearCaches() {
+		appCache.clear();
+		serviceCache.clear();
+	}
+
 	private String getClientError(Exception e, String errorText) {
 		if (e instanceof CloudFoundryException) {
 			return  errorText + " :: " + e.getMessage() +
@@ -643,6 +2202,69 @@ public class CloudFoundryCommands implements CommandMarker {
 		}
 	}
 
+	enum AppSort {
+		name(new Comparator<CloudEntity>() {
+			@Override
+			public int compare(CloudEntity a, CloudEntity b) {
+				return a.getName().compareTo(b.getName());
+			}
+		}),
+		state(new Comparator<CloudEntity>() {
+			@Override
+			public int compare(CloudEntity a, CloudEntity b) {
+				return ((CloudApplication) a).getState().compareTo(((CloudApplication) b).getState());
+			}
+		}),
+		instances(new Comparator<CloudEntity>() {
+			@Override
+			public int compare(CloudEntity a, CloudEntity b) {
+				return compareInts(((CloudApplication) b).getInstances(), ((CloudApplication) a).getInstances());
+			}
+		}),
+		memory(new Comparator<CloudEntity>() {
+			@Override
+			public int compare(CloudEntity a, CloudEntity b) {
+				return compareInts(((CloudApplication) b).getMemory(), ((CloudApplication) a).getMemory());
+			}
+		});
+
+		private final Comparator<CloudEntity> comparator;
+
+		private AppSort(Comparator<CloudEntity> comparator) {
+			this.comparator = comparator;
+		}
+
+		private static int compareInts(int a, int b) {
+			return a < b ? -1 : (a == b ? 0 : 1);
+		}
+	}
+
+	enum ServiceSort {
+		name(AppSort.name.comparator),
+		service(new Comparator<CloudEntity>() {
+			@Override
+			public int compare(CloudEntity a, CloudEntity b) {
+				return String.valueOf(label((CloudService) a)).compareTo(String.valueOf(label((CloudService) b)));
+			}
+		}),
+		version(new Comparator<CloudEntity>() {
+			@Override
+			public int compare(CloudEntity a, CloudEntity b) {
+				return String.valueOf(((CloudService) a).getVersion()).compareTo(String.valueOf(((CloudService) b).getVersion()));
+			}
+		});
+
+		private final Comparator<CloudEntity> comparator;
+
+		private ServiceSort(Comparator<CloudEntity> comparator) {
+			this.comparator = comparator;
+		}
+
+		private static String label(CloudService svc) {
+			return svc.getLabel() != null ? svc.getLabel() : svc.getVendor();
+		}
+	}
+
 	enum Runtimes {
 		java, java7;
 	}
@@ -0,0 +1,79 @@
+package com.springdeveloper.cloud.shell;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.core.Completion;
+import org.springframework.shell.core.Converter;
+import org.springframework.shell.core.MethodTarget;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Completes app, service, org and space names for the options whose context asks for them,
+ * from the names the commands have already loaded. For comma separated lists only the last
+ * entry is completed.
+ */
+@Component
+public class CloudNameConverter implements Converter<String> {
+
+	static final String APP = "cf-app";
+
+	static final String SERVICE = "cf-service";
+
+	static final String ORG = "cf-org";
+
+	static final String SPACE = "cf-space";
+
+	private final CloudFoundryCommands commands;
+
+	@Autowired
+	public CloudNameConverter(CloudFoundryCommands commands) {
+		this.commands = commands;
+	}
+
+	@Override
+	public boolean supports(Class<?> type, String optionContext) {
+		return String.class.equals(type) && getKind(optionContext) != null;
+	}
+
+	@Override
+	public String convertFromText(String value, Class<?> targetType, String optionContext) {
+		return value;
+	}
+
+	@Override
+	public boolean getAllPossibleValues(List<Completion> completions, Class<?> targetType, String existingData,
+			String optionContext, MethodTarget target) {
+		NameIndex.Kind kind = getKind(optionContext);
+		if (kind == null) {
+			return false;
+		}
+		String typed = existingData == null ? "" : existingData;
+		String listed = typed.substring(0, typed.lastIndexOf(',') + 1);
+		String prefix = typed.substring(listed.length());
+		for (String name : commands.names.get(kind)) {
+			if (name.startsWith(prefix)) {
+				completions.add(new Completion(listed + name));
+			}
+		}
+		return true;
+	}
+
+	private static NameIndex.Kind getKind(String optionContext) {
+		if (optionContext == null) {
+			return null;
+		}
+		for (String context : optionContext.split(" ")) {
+			if (APP.equals(context)) {
+				return NameIndex.Kind.APP;
+			} else if (SERVICE.equals(context)) {
+				return NameIndex.Kind.SERVICE;
+			} else if (ORG.equals(context)) {
+				return NameIndex.Kind.ORG;
+			} else if (SPACE.equals(context)) {
+				return NameIndex.Kind.SPACE;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,47 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudService;
+
+/**
+ * A named, logged-in connection to a target: the client and everything the shell keeps for it.
+ */
+class CloudSession {
+
+	final String alias;
+
+	final String target;
+
+	final boolean v1;
+
+	final String user;
+
+	final SessionStore.Session session;
+
+	final CloudFoundryOperations client;
+
+	final SpaceIndex spaceIndex;
+
+	final TtlCache<CloudApplication> appCache;
+
+	final TtlCache<CloudService> serviceCache;
+
+	CloudSession(String alias, String target, boolean v1, String user, SessionStore.Session session,
+			CloudFoundryOperations client, SpaceIndex spaceIndex, TtlCache<CloudApplication> appCache,
+			TtlCache<CloudService> serviceCache) {
+		this.alias = alias;
+		this.target = target;
+		this.v1 = v1;
+		this.user = user;
+		this.session = session;
+		this.client = client;
+		this.spaceIndex = spaceIndex;
+		this.appCache = appCache;
+		this.serviceCache = serviceCache;
+	}
+
+	String describe() {
+		return target + " as " + user + (session != null && session.org != null ? " in " + session.org + "/" + session.space : "");
+	}
+}
@@ -0,0 +1,26 @@
+package com.springdeveloper.cloud.shell;
+
+import org.springframework.shell.Bootstrap;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Starts the interactive shell, or with <code>--daemon</code> a long-lived shell that runs
+ * commands sent by <code>--client</code> invocations.
+ */
+public class CloudShellMain {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && ("--client".equals(args[0]) || "--stop".equals(args[0]))) {
+			System.exit(DaemonClient.run(args));
+		}
+		// the JDK reads the transport settings once, when its HTTP classes are first used
+		HttpTransport.shared();
+		if (args.length > 0 && "--daemon".equals(args[0])) {
+			ShellDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+		} else {
+			Bootstrap.main(args);
+		}
+	}
+}
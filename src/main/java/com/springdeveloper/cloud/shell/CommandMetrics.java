@@ -0,0 +1,164 @@
+package com.springdeveloper.cloud.shell;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and call, error and REST request counts for each shell command. The
+ * metrics are shared by the whole JVM and each command is registered as an MBean under
+ * <code>com.springdeveloper.cloud.shell:type=CommandMetrics</code> the first time it runs.
+ */
+class CommandMetrics {
+
+	static final String DOMAIN = "com.springdeveloper.cloud.shell";
+
+	private static final CommandMetrics shared = new CommandMetrics(ManagementFactory.getPlatformMBeanServer());
+
+	private final MBeanServer server;
+
+	private final ConcurrentMap<String, CommandStats> commands = new ConcurrentHashMap<String, CommandStats>();
+
+	CommandMetrics(MBeanServer server) {
+		this.server = server;
+	}
+
+	static CommandMetrics shared() {
+		return shared;
+	}
+
+	void record(String command, long elapsedNanos, boolean error, long restCalls) {
+		CommandStats stats = commands.get(command);
+		if (stats == null) {
+			CommandStats created = new CommandStats(command);
+			stats = commands.putIfAbsent(command, created);
+			if (stats == null) {
+				stats = created;
+				register(created);
+			}
+		}
+		stats.histogram.record(elapsedNanos / 1000);
+		stats.calls.incrementAndGet();
+		if (error) {
+			stats.errors.incrementAndGet();
+		}
+		stats.restCalls.addAndGet(restCalls);
+	}
+
+	private void register(CommandStats stats) {
+		if (server == null) {
+			return;
+		}
+		try {
+			server.registerMBean(new StandardMBean(stats, CommandStatsMBean.class),
+					new ObjectName(DOMAIN + ":type=CommandMetrics,name=" + ObjectName.quote(stats.command)));
+		} catch (JMException e) {
+			// the metrics are still available through cf metrics
+		}
+	}
+
+	/**
+	 * The stats for each command that has run, by command name.
+	 */
+	List<CommandStats> getAll() {
+		List<CommandStats> all = new ArrayList<CommandStats>(commands.values());
+		Collections.sort(all, new Comparator<CommandStats>() {
+			@Override
+			public int compare(CommandStats a, CommandStats b) {
+				return a.command.compareTo(b.command);
+			}
+		});
+		return all;
+	}
+
+	void reset() {
+		for (CommandStats stats : commands.values()) {
+			stats.reset();
+		}
+	}
+
+	static class CommandStats implements CommandStatsMBean {
+
+		private final String command;
+
+		private final LatencyHistogram histogram = new LatencyHistogram();
+
+		private final AtomicLong calls = new AtomicLong();
+
+		private final AtomicLong errors = new AtomicLong();
+
+		private final AtomicLong restCalls = new AtomicLong();
+
+		CommandStats(String command) {
+			this.command = command;
+		}
+
+		@Override
+		public String getCommand() {
+			return command;
+		}
+
+		@Override
+		public long getCalls() {
+			return calls.get();
+		}
+
+		@Override
+		public long getErrors() {
+			return errors.get();
+		}
+
+		@Override
+		public long getRestCalls() {
+			return restCalls.get();
+		}
+
+		@Override
+		public double getRestCallsPerCall() {
+			long n = calls.get();
+			return n == 0 ? 0 : (double) restCalls.get() / n;
+		}
+
+		@Override
+		public double getMeanMillis() {
+			return histogram.getMean() / 1000.0;
+		}
+
+		@Override
+		public double getP50Millis() {
+			return histogram.getPercentile(50) / 1000.0;
+		}
+
+		@Override
+		public double getP95Millis() {
+			return histogram.getPercentile(95) / 1000.0;
+		}
+
+		@Override
+		public double getP99Millis() {
+			return histogram.getPercentile(99) / 1000.0;
+		}
+
+		@Override
+		public double getMaxMillis() {
+			return histogram.getMax() / 1000.0;
+		}
+
+		@Override
+		public void reset() {
+			histogram.reset();
+			calls.set(0);
+			errors.set(0);
+			restCalls.set(0);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.springdeveloper.cloud.shell;
+
+/**
+ * The management interface for the timings of one shell command.
+ */
+public interface CommandStatsMBean {
+
+	String getCommand();
+
+	long getCalls();
+
+	long getErrors();
+
+	long getRestCalls();
+
+	double getRestCallsPerCall();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP95Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
@@ -0,0 +1,70 @@
+package com.springdeveloper.cloud.shell;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Sends one command line to a running daemon and prints its output, for example
+ * <code>--client --session ci cf apps</code>. The session defaults to the
+ * <code>CLOUD_SHELL_SESSION</code> environment variable, or <code>default</code>.
+ */
+class DaemonClient {
+
+	/**
+	 * @return the exit status: 0 if the command succeeded, 1 if it failed and 2 if the daemon could not be reached
+	 */
+	static int run(String[] args) throws IOException {
+		String session = System.getenv("CLOUD_SHELL_SESSION") != null ? System.getenv("CLOUD_SHELL_SESSION") : "default";
+		StringBuilder line = new StringBuilder();
+		if ("--stop".equals(args[0])) {
+			line.append(ShellDaemon.STOP);
+		}
+		for (int i = 1; i < args.length; i++) {
+			if ("--session".equals(args[i]) && i + 1 < args.length && line.length() == 0) {
+				session = args[++i];
+				continue;
+			}
+			if (line.length() > 0) {
+				line.append(' ');
+			}
+			line.append(args[i].matches(".*\\s.*") ? "\"" + args[i] + "\"" : args[i]);
+		}
+		File file = ShellDaemon.getDaemonFile();
+		Properties daemon = ShellHome.load(file);
+		if (daemon.getProperty("port") == null) {
+			System.err.println("No cloud-shell daemon is running, start one with --daemon");
+			return 2;
+		}
+		Socket socket;
+		try {
+			socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(daemon.getProperty("port")));
+		} catch (ConnectException e) {
+			System.err.println("The cloud-shell daemon is not responding, start one with --daemon");
+			return 2;
+		}
+		try {
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+			out.write(daemon.getProperty("token") + "\n" + session + "\n" + line + "\n");
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			String reply;
+			while ((reply = in.readLine()) != null) {
+				if (reply.startsWith(ShellDaemon.STATUS_PREFIX)) {
+					return Integer.parseInt(reply.substring(ShellDaemon.STATUS_PREFIX.length()).trim());
+				}
+				System.out.println(reply);
+			}
+			return 1;
+		} finally {
+			socket.close();
+		}
+	}
+}
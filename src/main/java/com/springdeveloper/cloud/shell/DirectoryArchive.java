@@ -0,0 +1,208 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.archive.ApplicationArchive;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An exploded app directory presented as an application archive. The files are digested in
+ * parallel across all cores up front, which is what the client needs to ask the controller
+ * which resources it already has; the client then builds the zip on the fly while it streams
+ * the upload, so no archive is written to disk.
+ * <p>
+ * All builds share one pool of digesting threads, and the digest of each file is remembered
+ * until it changes, so planning a push and then uploading the same directory reads it once.
+ */
+class DirectoryArchive implements ApplicationArchive {
+
+	private static final ExecutorService digesters = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "cf-digest-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final File directory;
+
+	private final List<Entry> entries;
+
+	private DirectoryArchive(File directory, List<Entry> entries) {
+		this.directory = directory;
+		this.entries = entries;
+	}
+
+	static DirectoryArchive build(File directory) throws IOException, InterruptedException {
+		List<FileEntry> files = new ArrayList<FileEntry>();
+		List<Entry> entries = new ArrayList<Entry>();
+		walk(directory, "", entries, files);
+		List<Future<byte[]>> digests = new ArrayList<Future<byte[]>>(files.size());
+		try {
+			for (final FileEntry file : files) {
+				digests.add(digesters.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws IOException {
+						return Fingerprint.digestBytes(file.file);
+					}
+				}));
+			}
+			for (int i = 0; i < files.size(); i++) {
+				files.get(i).digest = digests.get(i).get();
+			}
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			for (Future<byte[]> digest : digests) {
+				digest.cancel(true);
+			}
+		}
+		return new DirectoryArchive(directory, Collections.unmodifiableList(entries));
+	}
+
+	private static void walk(File dir, String prefix, List<Entry> entries, List<FileEntry> files) throws IOException {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			throw new IOException("Unable to list " + dir);
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.isDirectory()) {
+				String name = prefix + child.getName() + "/";
+				entries.add(new DirectoryEntry(name));
+				walk(child, name, entries, files);
+			} else {
+				FileEntry entry = new FileEntry(prefix + child.getName(), child);
+				entries.add(entry);
+				files.add(entry);
+			}
+		}
+	}
+
+	@Override
+	public String getFilename() {
+		return directory.getName();
+	}
+
+	@Override
+	public Iterable<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Hex SHA-1 digests of the files, by entry name.
+	 */
+	Map<String, String> getEntryDigests() {
+		Map<String, String> digests = new TreeMap<String, String>();
+		for (Entry entry : entries) {
+			if (!entry.isDirectory()) {
+				digests.put(entry.getName(), Fingerprint.toHex(entry.getSha1Digest()));
+			}
+		}
+		return digests;
+	}
+
+	/**
+	 * A digest of the whole directory, derived from the sorted entry names and their digests.
+	 */
+	String getDigest() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (Map.Entry<String, String> digest : getEntryDigests().entrySet()) {
+			content.append(digest.getKey()).append('\0').append(digest.getValue()).append('\n');
+		}
+		return Fingerprint.sha1(new ByteArrayInputStream(content.toString().getBytes("UTF-8")));
+	}
+
+	private static class DirectoryEntry implements Entry {
+
+		private final String name;
+
+		DirectoryEntry(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return true;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public long getSize() {
+			return 0;
+		}
+
+		@Override
+		public byte[] getSha1Digest() {
+			return null;
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return null;
+		}
+	}
+
+	private static class FileEntry implements Entry {
+
+		private final String name;
+
+		private final File file;
+
+		private byte[] digest;
+
+		FileEntry(String name, File file) {
+			this.name = name;
+			this.file = file;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return false;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public long getSize() {
+			return file.length();
+		}
+
+		@Override
+		public byte[] getSha1Digest() {
+			return digest;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new FileInputStream(file);
+		}
+	}
+}
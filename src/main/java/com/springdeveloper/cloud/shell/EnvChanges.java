@@ -0,0 +1,142 @@
+package com.springdeveloper.cloud.shell;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A set of environment variable assignments and the changes they make to an app's current
+ * environment. An empty value un-sets the variable.
+ */
+class EnvChanges {
+
+	private final Map<String, String> assignments = new LinkedHashMap<String, String>();
+
+	private final Map<String, String> added = new TreeMap<String, String>();
+
+	private final Map<String, String> changed = new TreeMap<String, String>();
+
+	private final Map<String, String> removed = new TreeMap<String, String>();
+
+	void set(String name, String value) {
+		assignments.put(name, value == null ? "" : value);
+	}
+
+	/**
+	 * Add comma separated <code>name=value</code> pairs; a comma inside a value is written as <code>\,</code>.
+	 */
+	void parsePairs(String pairs) {
+		StringBuilder pair = new StringBuilder();
+		for (int i = 0; i <= pairs.length(); i++) {
+			char c = i < pairs.length() ? pairs.charAt(i) : ',';
+			if (c == '\\' && i + 1 < pairs.length() && pairs.charAt(i + 1) == ',') {
+				pair.append(',');
+				i++;
+			} else if (c == ',') {
+				String assignment = pair.toString().trim();
+				if (assignment.length() > 0) {
+					int equals = assignment.indexOf('=');
+					if (equals <= 0) {
+						throw new IllegalArgumentException("Expected name=value but got '" + assignment + "'");
+					}
+					set(assignment.substring(0, equals).trim(), assignment.substring(equals + 1));
+				}
+				pair.setLength(0);
+			} else {
+				pair.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Add the assignments from a YAML file with a map of names to values, or from a properties file.
+	 */
+	@SuppressWarnings("rawtypes")
+	void load(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			String name = file.getName().toLowerCase();
+			if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+				Object yaml = new Yaml().load(in);
+				if (yaml != null && !(yaml instanceof Map)) {
+					throw new IllegalArgumentException("Expected a map of variables in " + file);
+				}
+				if (yaml != null) {
+					for (Object entry : ((Map) yaml).entrySet()) {
+						Object value = ((Map.Entry) entry).getValue();
+						set(String.valueOf(((Map.Entry) entry).getKey()), value == null ? null : value.toString());
+					}
+				}
+			} else {
+				Properties properties = new Properties();
+				properties.load(in);
+				for (String key : properties.stringPropertyNames()) {
+					set(key, properties.getProperty(key));
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	boolean isEmpty() {
+		return assignments.isEmpty();
+	}
+
+	/**
+	 * Apply the assignments to a copy of the current environment, recording what differs.
+	 *
+	 * @return the updated environment
+	 */
+	Map<String, String> applyTo(Map<String, String> current) {
+		added.clear();
+		changed.clear();
+		removed.clear();
+		Map<String, String> env = new LinkedHashMap<String, String>(current);
+		for (Map.Entry<String, String> assignment : assignments.entrySet()) {
+			String name = assignment.getKey();
+			String value = assignment.getValue();
+			if (value.length() == 0) {
+				if (env.containsKey(name)) {
+					removed.put(name, env.remove(name));
+				}
+			} else if (!env.containsKey(name)) {
+				added.put(name, value);
+				env.put(name, value);
+			} else if (!value.equals(env.get(name))) {
+				changed.put(name, value);
+				env.put(name, value);
+			}
+		}
+		return env;
+	}
+
+	boolean hasChanges() {
+		return !added.isEmpty() || !changed.isEmpty() || !removed.isEmpty();
+	}
+
+	int size() {
+		return added.size() + changed.size() + removed.size();
+	}
+
+	String describe() {
+		StringBuilder description = new StringBuilder();
+		for (String name : added.keySet()) {
+			description.append("+ " + name + "\n");
+		}
+		for (String name : changed.keySet()) {
+			description.append("~ " + name + "\n");
+		}
+		for (String name : removed.keySet()) {
+			description.append("- " + name + "\n");
+		}
+		return description.toString();
+	}
+}
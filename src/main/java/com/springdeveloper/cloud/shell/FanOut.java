@@ -0,0 +1,83 @@
+package com.springdeveloper.cloud.shell;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs the same query against several sessions at once and keeps each session's result,
+ * failure and latency, in the order the sessions were given.
+ */
+class FanOut<T> {
+
+	interface Query<T> {
+		T run(CloudSession session) throws Exception;
+	}
+
+	private final Map<String, T> results = new ConcurrentHashMap<String, T>();
+
+	private final Map<String, Long> latencies = new ConcurrentHashMap<String, Long>();
+
+	private final Map<String, CloudSession> sessions = new LinkedHashMap<String, CloudSession>();
+
+	private final TaskGraph graph = new TaskGraph();
+
+	private FanOut(List<CloudSession> sessions, final Query<T> query) {
+		for (final CloudSession session : sessions) {
+			this.sessions.put(session.alias, session);
+			graph.add(session.alias, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					long start = System.nanoTime();
+					try {
+						T result = query.run(session);
+						if (result != null) {
+							results.put(session.alias, result);
+						}
+						return result;
+					} finally {
+						latencies.put(session.alias, (System.nanoTime() - start) / 1000000);
+					}
+				}
+			});
+		}
+	}
+
+	static <T> FanOut<T> run(List<CloudSession> sessions, Query<T> query) throws InterruptedException {
+		FanOut<T> fanOut = new FanOut<T>(sessions, query);
+		fanOut.graph.run(Math.max(1, sessions.size()));
+		return fanOut;
+	}
+
+	Map<String, CloudSession> getSessions() {
+		return sessions;
+	}
+
+	T getResult(String alias) {
+		return results.get(alias);
+	}
+
+	/**
+	 * One line per session with its latency and either the given description of its result or its failure.
+	 */
+	String describe(Describer<T> describer) {
+		StringBuilder description = new StringBuilder();
+		for (TaskGraph.Task task : graph.getTasks()) {
+			description.append(task.getName() + " :: ");
+			if (task.getStatus() == TaskGraph.Status.SUCCEEDED) {
+				description.append(describer.describe(results.get(task.getName())));
+			} else {
+				Throwable error = task.getError();
+				description.append("failed (" + (error == null ? task.getStatus() : error.getMessage()) + ")");
+			}
+			description.append(" in " + latencies.get(task.getName()) + " ms\n");
+		}
+		return description.toString();
+	}
+
+	interface Describer<T> {
+		String describe(T result);
+	}
+}
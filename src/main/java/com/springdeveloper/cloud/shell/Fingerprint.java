@@ -0,0 +1,153 @@
+package com.springdeveloper.cloud.shell;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * SHA-1 digests of an app archive and of each of its entries.
+ */
+class Fingerprint {
+
+	private static final int MAX_CACHED_DIGESTS = 20000;
+
+	/**
+	 * How recently a file may have been modified for its cached digest to be trusted. A file
+	 * rewritten at the same size within the file system's timestamp granularity keeps its
+	 * modification time, so a digest taken in that window may be stale.
+	 */
+	private static final long MODIFIED_MARGIN = 2000;
+
+	private static final Map<String, FileDigest> digestsByFile = Collections.synchronizedMap(
+			new LinkedHashMap<String, FileDigest>(256, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, FileDigest> eldest) {
+					return size() > MAX_CACHED_DIGESTS;
+				}
+			});
+
+	final String archiveDigest;
+
+	final Map<String, String> entryDigests;
+
+	Fingerprint(String archiveDigest, Map<String, String> entryDigests) {
+		this.archiveDigest = archiveDigest;
+		this.entryDigests = entryDigests;
+	}
+
+	static Fingerprint of(DirectoryArchive directory) throws IOException {
+		return new Fingerprint(directory.getDigest(), directory.getEntryDigests());
+	}
+
+	static Fingerprint of(File archive) throws IOException {
+		Map<String, String> entryDigests = new TreeMap<String, String>();
+		ZipFile zip = new ZipFile(archive);
+		try {
+			for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				if (!entry.isDirectory()) {
+					entryDigests.put(entry.getName(), sha1(zip.getInputStream(entry)));
+				}
+			}
+		} finally {
+			zip.close();
+		}
+		return new Fingerprint(digest(archive), entryDigests);
+	}
+
+	/**
+	 * The SHA-1 of the archive file, remembered for as long as its path, size and modification time stay the same.
+	 */
+	static String digest(File archive) throws IOException {
+		return toHex(digestBytes(archive));
+	}
+
+	/**
+	 * The SHA-1 of a file, remembered the same way as {@link #digest(File)}, so that the files of
+	 * an exploded app are only read again once they change. A file modified in the last couple of
+	 * seconds is always read, since a change within that time may not show in its modification time.
+	 */
+	static byte[] digestBytes(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		FileDigest cached = digestsByFile.get(path);
+		if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+			return cached.digest;
+		}
+		byte[] digest = sha1Bytes(new FileInputStream(file));
+		if (System.currentTimeMillis() - lastModified >= MODIFIED_MARGIN) {
+			digestsByFile.put(path, new FileDigest(length, lastModified, digest));
+		} else {
+			digestsByFile.remove(path);
+		}
+		return digest;
+	}
+
+	/**
+	 * The number of entries that were added or modified compared to a previous fingerprint.
+	 */
+	int countChangedEntries(Fingerprint previous) {
+		int changed = 0;
+		for (Map.Entry<String, String> entry : entryDigests.entrySet()) {
+			if (!entry.getValue().equals(previous.entryDigests.get(entry.getKey()))) {
+				changed++;
+			}
+		}
+		return changed;
+	}
+
+	static String sha1(InputStream in) throws IOException {
+		return toHex(sha1Bytes(in));
+	}
+
+	static byte[] sha1Bytes(InputStream in) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	private static class FileDigest {
+
+		final long length;
+
+		final long lastModified;
+
+		final byte[] digest;
+
+		FileDigest(long length, long lastModified, byte[] digest) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.digest = digest;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.springdeveloper.cloud.shell;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The fingerprint of the archive last uploaded for each app, kept in one file per app scope and
+ * app. The scope is where the app lives, as given by {@link SessionStore.Session#getAppScope()},
+ * so that apps of the same name in different spaces of a target are kept apart.
+ */
+class FingerprintStore {
+
+	private static final String ARCHIVE_KEY = "archive";
+
+	private static final String ENTRY_PREFIX = "entry.";
+
+	private final File directory;
+
+	FingerprintStore(File directory) {
+		this.directory = directory;
+	}
+
+	Fingerprint load(String scope, String app) throws IOException {
+		File file = file(scope, app);
+		if (!file.exists()) {
+			return null;
+		}
+		Properties properties = ShellHome.load(file);
+		Map<String, String> entryDigests = new TreeMap<String, String>();
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith(ENTRY_PREFIX)) {
+				entryDigests.put(name.substring(ENTRY_PREFIX.length()), properties.getProperty(name));
+			}
+		}
+		String archiveDigest = properties.getProperty(ARCHIVE_KEY);
+		return archiveDigest == null ? null : new Fingerprint(archiveDigest, entryDigests);
+	}
+
+	void save(String scope, String app, Fingerprint fingerprint) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(ARCHIVE_KEY, fingerprint.archiveDigest);
+		for (Map.Entry<String, String> entry : fingerprint.entryDigests.entrySet()) {
+			properties.setProperty(ENTRY_PREFIX + entry.getKey(), entry.getValue());
+		}
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+		ShellHome.store(properties, file(scope, app), scope + " " + app);
+	}
+
+	void remove(String scope, String app) throws IOException {
+		file(scope, app).delete();
+	}
+
+	private File file(String scope, String app) throws IOException {
+		String key = Fingerprint.sha1(new ByteArrayInputStream((scope + "|" + app).getBytes("UTF-8")));
+		return new File(directory, key + ".properties");
+	}
+}
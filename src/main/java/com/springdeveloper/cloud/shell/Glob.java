@@ -0,0 +1,32 @@
+package com.springdeveloper.cloud.shell;
+
+import java.util.regex.Pattern;
+
+/**
+ * Shell-style name patterns where <code>*</code> matches any characters and <code>?</code> matches one.
+ */
+class Glob {
+
+	static Pattern compile(String glob) {
+		StringBuilder regex = new StringBuilder();
+		int literal = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (i > literal) {
+					regex.append(Pattern.quote(glob.substring(literal, i)));
+				}
+				regex.append(c == '*' ? ".*" : ".");
+				literal = i + 1;
+			}
+		}
+		if (literal < glob.length()) {
+			regex.append(Pattern.quote(glob.substring(literal)));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	static boolean isPattern(String name) {
+		return name.indexOf('*') >= 0 || name.indexOf('?') >= 0;
+	}
+}
@@ -0,0 +1,96 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudCredentials;
+import org.cloudfoundry.client.lib.CloudFoundryClient;
+import org.cloudfoundry.client.lib.domain.CloudSpace;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HTTP transport shared by every client the shell creates. The client library sends its
+ * requests through the JVM's <code>HttpURLConnection</code>, so the pooling and timeouts are
+ * configured there: keep-alive connections are pooled per host and reused by all clients.
+ * <p>
+ * The settings are read from <code>transport.properties</code> in the shell home
+ * (<code>maxConnections</code>, <code>connectTimeout</code> and <code>readTimeout</code> in
+ * milliseconds) and apply from startup; system properties that are already set win. There is
+ * no read timeout unless one is configured, since uploading a large app can keep a request
+ * waiting for its answer far longer than any other call.
+ * <p>
+ * All of this is JVM-wide rather than scoped to the shell's clients: the JDK only reads the
+ * properties when its HTTP classes initialize, which is why the main class sets them up before
+ * anything else runs.
+ */
+class HttpTransport {
+
+	static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+	private static final HttpTransport shared = new HttpTransport(ShellHome.getFile("transport.properties"));
+
+	private final Properties settings = new Properties();
+
+	private final Map<String, CloudFoundryClient> anonymousClients = new ConcurrentHashMap<String, CloudFoundryClient>();
+
+	private final AtomicLong clientsCreated = new AtomicLong();
+
+	private final AtomicLong clientsReused = new AtomicLong();
+
+	private HttpTransport(File file) {
+		Properties configured = ShellHome.load(file);
+		setDefault("http.keepAlive", "true");
+		setDefault("http.maxConnections", configured.getProperty("maxConnections", String.valueOf(DEFAULT_MAX_CONNECTIONS)));
+		setDefault("sun.net.client.defaultConnectTimeout", configured.getProperty("connectTimeout", String.valueOf(DEFAULT_CONNECT_TIMEOUT)));
+		setDefault("sun.net.client.defaultReadTimeout", configured.getProperty("readTimeout"));
+	}
+
+	private void setDefault(String name, String value) {
+		if (System.getProperty(name) == null && value != null) {
+			System.setProperty(name, value);
+		}
+		if (System.getProperty(name) != null) {
+			settings.setProperty(name, System.getProperty(name));
+		}
+	}
+
+	static HttpTransport shared() {
+		return shared;
+	}
+
+	CloudFoundryClient createClient(CloudCredentials credentials, URL target, CloudSpace space) {
+		clientsCreated.incrementAndGet();
+		return space == null ? new CloudFoundryClient(credentials, target) : new CloudFoundryClient(credentials, target, space);
+	}
+
+	/**
+	 * A client without credentials for the target, created once and reused for cloud info requests.
+	 */
+	CloudFoundryClient getAnonymousClient(String target) throws MalformedURLException {
+		CloudFoundryClient client = anonymousClients.get(target);
+		if (client == null) {
+			client = new CloudFoundryClient(new URL(target));
+			clientsCreated.incrementAndGet();
+			anonymousClients.put(target, client);
+		} else {
+			clientsReused.incrementAndGet();
+		}
+		return client;
+	}
+
+	String stats() {
+		String readTimeout = settings.getProperty("sun.net.client.defaultReadTimeout");
+		return "Transport: keep-alive " + settings.getProperty("http.keepAlive") +
+				", up to " + settings.getProperty("http.maxConnections") + " idle connections per host" +
+				", connect timeout " + settings.getProperty("sun.net.client.defaultConnectTimeout") + " ms" +
+				(readTimeout == null ? ", no read timeout\n" : ", read timeout " + readTimeout + " ms\n") +
+				"Clients: " + clientsCreated.get() + " created, " + clientsReused.get() + " reused\n" +
+				"These settings cover the whole JVM and are fixed at startup.";
+	}
+}
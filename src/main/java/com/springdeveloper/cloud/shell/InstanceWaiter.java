@@ -0,0 +1,199 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.InstanceInfo;
+import org.cloudfoundry.client.lib.domain.InstanceState;
+import org.cloudfoundry.client.lib.domain.InstancesInfo;
+import org.springframework.http.HttpStatus;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Waits for a set of apps to reach their expected number of running instances. Each app is
+ * polled on its own schedule: the interval doubles while nothing changes and drops back as
+ * soon as an instance changes state, with jitter so that apps started together do not keep
+ * polling in lock step.
+ */
+class InstanceWaiter {
+
+	static final long MIN_INTERVAL = 500;
+
+	static final long MAX_INTERVAL = 8000;
+
+	private final CloudFoundryOperations client;
+
+	private final PrintStream out;
+
+	private final Random random = new Random();
+
+	private final Map<String, AppWait> apps = new LinkedHashMap<String, AppWait>();
+
+	InstanceWaiter(CloudFoundryOperations client, PrintStream out) {
+		this.client = client;
+		this.out = out;
+	}
+
+	void add(String appName, int instances) {
+		apps.put(appName, new AppWait(appName, instances));
+	}
+
+	/**
+	 * Poll until every app has its expected instances running or the timeout passes.
+	 *
+	 * @return true if all apps reached their expected instances
+	 */
+	boolean await(long timeoutMillis) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		long deadline = start + timeoutMillis;
+		PriorityQueue<AppWait> due = new PriorityQueue<AppWait>(Math.max(1, apps.size()), new Comparator<AppWait>() {
+			@Override
+			public int compare(AppWait a, AppWait b) {
+				return a.nextPoll < b.nextPoll ? -1 : (a.nextPoll > b.nextPoll ? 1 : 0);
+			}
+		});
+		for (AppWait app : apps.values()) {
+			app.started = start;
+			app.nextPoll = start;
+			due.add(app);
+		}
+		while (!due.isEmpty()) {
+			AppWait app = due.poll();
+			long now = System.currentTimeMillis();
+			if (app.nextPoll >= deadline) {
+				break;
+			}
+			if (app.nextPoll > now) {
+				Thread.sleep(app.nextPoll - now);
+			}
+			try {
+				poll(app);
+			} catch (RuntimeException e) {
+				// a failure to reach the controller for one app, or an open breaker, only ends its own wait
+				app.error = e;
+				continue;
+			}
+			if (!app.isDone()) {
+				app.nextPoll = System.currentTimeMillis() + jitter(app.interval);
+				due.add(app);
+			}
+		}
+		for (AppWait app : apps.values()) {
+			if (!app.isDone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void poll(AppWait app) {
+		Map<Integer, InstanceState> states = new TreeMap<Integer, InstanceState>();
+		try {
+			InstancesInfo info = client.getApplicationInstances(app.name);
+			if (info != null) {
+				for (InstanceInfo instance : info.getInstances()) {
+					states.put(instance.getIndex(), instance.getState());
+				}
+			}
+		} catch (CloudFoundryException e) {
+			// the controller answers with a bad request while the app is still staging
+			if (e.getStatusCode() != HttpStatus.BAD_REQUEST) {
+				throw e;
+			}
+		}
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Integer, InstanceState> state : states.entrySet()) {
+			if (state.getValue() == InstanceState.RUNNING && !app.runningAfter.containsKey(state.getKey())) {
+				long elapsed = now - app.started;
+				app.runningAfter.put(state.getKey(), elapsed);
+				out.println("App " + app.name + " instance " + state.getKey() + " running after " + elapsed + " ms");
+			}
+		}
+		app.interval = states.equals(app.states) ? Math.min(app.interval * 2, MAX_INTERVAL) : MIN_INTERVAL;
+		app.states = states;
+	}
+
+	/**
+	 * A delay between half and all of the interval.
+	 */
+	private long jitter(long interval) {
+		return interval / 2 + (long) (random.nextDouble() * (interval / 2));
+	}
+
+	/**
+	 * One line per app with the time each instance took to reach the running state.
+	 */
+	String describe() {
+		StringBuilder description = new StringBuilder();
+		for (AppWait app : apps.values()) {
+			if (description.length() > 0) {
+				description.append("\n");
+			}
+			description.append(app.name + " :: ");
+			if (app.error != null) {
+				description.append("failed: " + (app.error.getMessage() != null ? app.error.getMessage() : app.error.toString()));
+			} else if (app.isDone()) {
+				description.append(app.countRunning() + " of " + app.instances + " instances RUNNING");
+			} else {
+				description.append("timed out with " + app.countRunning() + " of " + app.instances +
+						" instances RUNNING");
+			}
+			List<String> instances = new ArrayList<String>();
+			for (Map.Entry<Integer, InstanceState> state : app.states.entrySet()) {
+				Long elapsed = app.runningAfter.get(state.getKey());
+				instances.add(state.getKey() + ": " + state.getValue() +
+						(elapsed != null && state.getValue() == InstanceState.RUNNING ? " after " + elapsed + " ms" : ""));
+			}
+			if (!instances.isEmpty()) {
+				description.append(" " + instances);
+			}
+		}
+		return description.toString();
+	}
+
+	private static class AppWait {
+
+		final String name;
+
+		final int instances;
+
+		final Map<Integer, Long> runningAfter = new TreeMap<Integer, Long>();
+
+		Map<Integer, InstanceState> states = new TreeMap<Integer, InstanceState>();
+
+		long started;
+
+		long nextPoll;
+
+		long interval = MIN_INTERVAL;
+
+		RuntimeException error;
+
+		AppWait(String name, int instances) {
+			this.name = name;
+			this.instances = instances;
+		}
+
+		int countRunning() {
+			int running = 0;
+			for (InstanceState state : states.values()) {
+				if (state == InstanceState.RUNNING) {
+					running++;
+				}
+			}
+			return running;
+		}
+
+		boolean isDone() {
+			return error == null && countRunning() >= instances;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.InstanceInfo;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CoderResult;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follows the log files of an app's instances, fetching only the bytes appended since the
+ * previous poll and printing complete lines as they arrive. The poll interval grows while
+ * the logs are quiet and drops back as soon as new output shows up.
+ */
+class LogFollower {
+
+	static final long MIN_INTERVAL = 500;
+
+	static final long MAX_INTERVAL = 5000;
+
+	static final int INITIAL_TAIL_BYTES = 4096;
+
+	static final int MAX_PARTIAL_LINE = 64 * 1024;
+
+	private static final int DISCOVERY_POLLS = 20;
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private static final Pattern LISTING_LINE = Pattern.compile("^(\\S+)\\s+([0-9.]+)([BKMG])\\s*$");
+
+	private final CloudFoundryOperations client;
+
+	private final String appName;
+
+	private final Integer instance;
+
+	private final String file;
+
+	private final PrintStream out;
+
+	private final Map<String, LogStream> streams = new LinkedHashMap<String, LogStream>();
+
+	/** The charset the client decodes the target's log files with, once a response has shown it. */
+	private Charset charset;
+
+	LogFollower(CloudFoundryOperations client, String appName, Integer instance, String file, PrintStream out) {
+		this.client = client;
+		this.appName = appName;
+		this.instance = instance;
+		this.file = file;
+		this.out = out;
+	}
+
+	/**
+	 * Follow the logs until the timeout passes (zero for no timeout) or a line is entered on the given input.
+	 */
+	void follow(long timeoutMillis, InputStream stopInput) throws IOException, InterruptedException {
+		long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+		long interval = MIN_INTERVAL;
+		int polls = 0;
+		while (System.currentTimeMillis() < deadline) {
+			if (polls++ % DISCOVERY_POLLS == 0) {
+				discover();
+			}
+			boolean received = false;
+			for (LogStream stream : new ArrayList<LogStream>(streams.values())) {
+				received |= poll(stream);
+			}
+			out.flush();
+			interval = received ? MIN_INTERVAL : Math.min(interval * 2, MAX_INTERVAL);
+			long wakeUp = Math.min(System.currentTimeMillis() + interval, deadline);
+			while (System.currentTimeMillis() < wakeUp) {
+				if (stopInput != null && stopInput.available() > 0) {
+					while (stopInput.available() > 0) {
+						stopInput.read();
+					}
+					return;
+				}
+				Thread.sleep(Math.min(100, Math.max(1, wakeUp - System.currentTimeMillis())));
+			}
+		}
+	}
+
+	private void discover() {
+		List<Integer> indexes = new ArrayList<Integer>();
+		if (instance != null) {
+			indexes.add(instance);
+		} else {
+			for (InstanceInfo info : client.getApplicationInstances(appName).getInstances()) {
+				indexes.add(info.getIndex());
+			}
+		}
+		for (Integer index : indexes) {
+			Map<String, Long> files;
+			if (file != null) {
+				String path = file.contains("/") ? file : "logs/" + file;
+				Long size = listFiles(index, path.substring(0, path.lastIndexOf('/') + 1)).get(path);
+				files = new LinkedHashMap<String, Long>();
+				files.put(path, size == null ? 0L : size);
+			} else {
+				files = listFiles(index, "logs/");
+			}
+			for (Map.Entry<String, Long> entry : files.entrySet()) {
+				String key = index + "/" + entry.getKey();
+				if (!streams.containsKey(key)) {
+					LogStream stream = new LogStream(index, entry.getKey());
+					stream.offset = (int) Math.max(0, entry.getValue() * 9 / 10 - INITIAL_TAIL_BYTES);
+					stream.skipPartialLine = stream.offset > 0;
+					streams.put(key, stream);
+				}
+			}
+		}
+	}
+
+	private Map<String, Long> listFiles(int index, String directory) {
+		return parseListing(directory, client.getFile(appName, index, directory));
+	}
+
+	/**
+	 * The files in a directory of an instance with their approximate sizes, parsed from the
+	 * listing returned by the controller (for example <code>stdout.log   1.5K</code>).
+	 */
+	static Map<String, Long> parseListing(String directory, String listing) {
+		Map<String, Long> files = new LinkedHashMap<String, Long>();
+		if (listing == null) {
+			return files;
+		}
+		for (String line : listing.split("\n")) {
+			Matcher matcher = LISTING_LINE.matcher(line.trim());
+			if (matcher.matches() && !matcher.group(1).endsWith("/")) {
+				double size = Double.parseDouble(matcher.group(2)) * Math.pow(1024, "BKMG".indexOf(matcher.group(3)));
+				files.put(directory + matcher.group(1), (long) size);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * The charset the client decoded a response into the given text with, or null while the text
+	 * cannot tell, which is when it is plain ASCII, so that either charset gives the same bytes,
+	 * apart from what may be the rest of a character cut off at the start.
+	 * <p>
+	 * The client decodes with the charset the response declares, or one byte per character when
+	 * it declares none, and does not say which it used. Log files are UTF-8, so text decoded one
+	 * byte per character always encodes back to valid UTF-8, apart from characters cut off at
+	 * either end, while text decoded as UTF-8 with any non-ASCII character does not.
+	 */
+	static Charset decodedWith(String content) {
+		for (int i = 0; i < content.length(); i++) {
+			if (content.charAt(i) > 0xFF) {
+				return UTF_8;
+			}
+		}
+		ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(ISO_8859_1));
+		// skip the rest of a character that started before this response
+		for (int i = 0; i < 3 && bytes.hasRemaining() && (bytes.get(bytes.position()) & 0xC0) == 0x80; i++) {
+			bytes.get();
+		}
+		boolean ascii = true;
+		for (int i = bytes.position(); i < bytes.limit(); i++) {
+			ascii &= bytes.get(i) >= 0;
+		}
+		if (ascii) {
+			return null;
+		}
+		CoderResult result = UTF_8.newDecoder().decode(bytes, CharBuffer.allocate(content.length()), false);
+		return result.isError() ? UTF_8 : ISO_8859_1;
+	}
+
+	/**
+	 * The bytes of the file the controller sent, given the text the client decoded them into and
+	 * the charset it decoded them with, as found by {@link #decodedWith(String)} for this or an
+	 * earlier response from the same target; null is only right for plain ASCII.
+	 */
+	static byte[] receivedBytes(String content, Charset charset) {
+		return content.getBytes(charset != null ? charset : ISO_8859_1);
+	}
+
+	private boolean poll(LogStream stream) throws UnsupportedEncodingException {
+		String content;
+		try {
+			content = client.getFile(appName, stream.index, stream.path, stream.offset);
+		} catch (CloudFoundryException e) {
+			if (e.getStatusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE) {
+				checkTruncated(stream);
+				return false;
+			}
+			if (e.getStatusCode() == HttpStatus.NOT_FOUND || e.getStatusCode() == HttpStatus.BAD_REQUEST) {
+				streams.remove(stream.index + "/" + stream.path);
+				return false;
+			}
+			throw e;
+		}
+		if (content == null || content.length() == 0) {
+			return false;
+		}
+		if (charset == null) {
+			charset = decodedWith(content);
+		}
+		byte[] bytes = receivedBytes(content, charset);
+		stream.offset += bytes.length;
+		int start = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\n') {
+				stream.partial.write(bytes, start, i - start);
+				emit(stream);
+				start = i + 1;
+			}
+		}
+		// a character split across polls is only decoded once the rest of it arrives
+		stream.partial.write(bytes, start, bytes.length - start);
+		if (stream.partial.size() > MAX_PARTIAL_LINE) {
+			emit(stream);
+		}
+		return true;
+	}
+
+	private void emit(LogStream stream) throws UnsupportedEncodingException {
+		if (stream.skipPartialLine) {
+			stream.skipPartialLine = false;
+		} else {
+			out.println((streams.size() > 1 ? "[" + stream.index + "/" + stream.path + "] " : "") +
+					stream.partial.toString("UTF-8"));
+		}
+		stream.partial.reset();
+	}
+
+	private void checkTruncated(LogStream stream) {
+		Long size = listFiles(stream.index, stream.path.substring(0, stream.path.lastIndexOf('/') + 1))
+				.get(stream.path);
+		if (size != null && size * 11 / 10 < stream.offset) {
+			stream.offset = 0;
+			stream.partial.reset();
+			stream.skipPartialLine = false;
+		}
+	}
+
+	private static class LogStream {
+
+		final int index;
+
+		final String path;
+
+		final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+		int offset;
+
+		boolean skipPartialLine;
+
+		LogStream(int index, String path) {
+			this.index = index;
+			this.path = path;
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.InstanceInfo;
+import org.springframework.http.HttpStatus;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * App log files kept on disk, one file per app, instance and log file, each with an index of
+ * where its lines start and when they were written. Refreshing only fetches the bytes added
+ * since the last refresh, and queries read the files and indexes through memory-mapped buffers
+ * without going back to the controller.
+ * <p>
+ * A line's time comes from a leading <code>yyyy-MM-dd HH:mm:ss</code> timestamp when it has
+ * one and otherwise from when it was fetched, and never goes back in time within a file.
+ * <p>
+ * Apps are kept per app scope, as given by {@link SessionStore.Session#getAppScope()}, so that
+ * apps of the same name in different spaces are kept apart. Only one refresh of an app runs at
+ * a time, across threads and shell processes, so that the bytes added are not appended twice.
+ */
+class LogStore {
+
+	private static final int INDEX_ENTRY_BYTES = 16;
+
+	private static final Pattern TIMESTAMP = Pattern.compile("^\\W{0,3}(\\d{4}-\\d{2}-\\d{2})[ T](\\d{2}:\\d{2}:\\d{2})");
+
+	/** One lock per app directory, since a JVM cannot hold two file locks on the same file. */
+	private static final ConcurrentMap<File, Object> refreshLocks = new ConcurrentHashMap<File, Object>();
+
+	private final File directory;
+
+	/** The charset the client decodes each scope's log files with, once a response has shown it. */
+	private final Map<String, Charset> charsets = new ConcurrentHashMap<String, Charset>();
+
+	LogStore(File directory) {
+		this.directory = directory;
+	}
+
+	private File getAppDirectory(String scope, String app) throws IOException {
+		return new File(directory, Fingerprint.sha1(new ByteArrayInputStream((scope + "|" + app).getBytes("UTF-8"))));
+	}
+
+	/**
+	 * Fetch what was added to the app's log files since the last refresh, waiting for any other
+	 * refresh of the app to finish first.
+	 *
+	 * @return the number of bytes fetched
+	 */
+	long refresh(CloudFoundryOperations client, String scope, String app) throws IOException {
+		File appDirectory = getAppDirectory(scope, app);
+		if (!appDirectory.exists() && !appDirectory.mkdirs()) {
+			throw new IOException("Unable to create " + appDirectory);
+		}
+		File descriptionFile = new File(appDirectory, "app.properties");
+		synchronized (getRefreshLock(appDirectory)) {
+			RandomAccessFile description = new RandomAccessFile(descriptionFile, "rw");
+			try {
+				// the lock on the description is released when it is closed
+				description.getChannel().lock();
+				ShellHome.restrictToOwner(descriptionFile);
+				describe(description, scope, app);
+				long fetched = 0;
+				for (InstanceInfo instance : client.getApplicationInstances(app).getInstances()) {
+					Map<String, Long> files = LogFollower.parseListing("logs/", client.getFile(app, instance.getIndex(), "logs/"));
+					for (Map.Entry<String, Long> file : files.entrySet()) {
+						fetched += refresh(client, scope, app, instance.getIndex(), file.getKey(), file.getValue(),
+								new File(appDirectory, instance.getIndex() + "-" + file.getKey().replace('/', '+')));
+					}
+				}
+				return fetched;
+			} finally {
+				description.close();
+			}
+		}
+	}
+
+	private static Object getRefreshLock(File appDirectory) {
+		Object lock = new Object();
+		Object existing = refreshLocks.putIfAbsent(appDirectory.getAbsoluteFile(), lock);
+		return existing != null ? existing : lock;
+	}
+
+	/**
+	 * Write which app a directory holds into its locked description file, in place.
+	 */
+	private static void describe(RandomAccessFile description, String scope, String app) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("scope", scope);
+		properties.setProperty("app", app);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		properties.store(bytes, "cloud-shell log store");
+		description.setLength(0);
+		description.write(bytes.toByteArray());
+	}
+
+	private long refresh(CloudFoundryOperations client, String scope, String app, int index, String path, long remoteSize, File log)
+			throws IOException {
+		File indexFile = new File(log.getPath() + ".idx");
+		long have = log.length();
+		String content;
+		try {
+			content = client.getFile(app, index, path, (int) have);
+		} catch (CloudFoundryException e) {
+			if (e.getStatusCode() != HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE) {
+				throw e;
+			}
+			if (remoteSize * 11 / 10 >= have) {
+				return 0;
+			}
+			// the file was rotated or truncated, so start over
+			log.delete();
+			indexFile.delete();
+			have = 0;
+			content = client.getFile(app, index, path);
+		}
+		if (content == null || content.length() == 0) {
+			return 0;
+		}
+		Charset charset = charsets.get(scope);
+		if (charset == null) {
+			charset = LogFollower.decodedWith(content);
+			if (charset != null) {
+				charsets.put(scope, charset);
+			}
+		}
+		byte[] bytes = LogFollower.receivedBytes(content, charset);
+		long lastTime = lastTime(indexFile);
+		long now = System.currentTimeMillis();
+		boolean atLineStart = have == 0 || endsWithNewline(log);
+		// the data goes first, so that the index never points past the end of the log
+		FileOutputStream logOut = new FileOutputStream(log, true);
+		try {
+			logOut.write(bytes);
+		} finally {
+			logOut.close();
+		}
+		DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+		try {
+			int lineStart = 0;
+			for (int i = 0; i <= bytes.length; i++) {
+				if (i == bytes.length || bytes[i] == '\n') {
+					if (atLineStart && i > lineStart) {
+						lastTime = Math.max(lastTime, timeOf(bytes, lineStart, i, now));
+						indexOut.writeLong(have + lineStart);
+						indexOut.writeLong(lastTime);
+					}
+					lineStart = i + 1;
+					atLineStart = true;
+				}
+			}
+		} finally {
+			indexOut.close();
+		}
+		return bytes.length;
+	}
+
+	private static boolean endsWithNewline(File log) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(log, "r");
+		try {
+			file.seek(file.length() - 1);
+			return file.read() == '\n';
+		} finally {
+			file.close();
+		}
+	}
+
+	private static long lastTime(File indexFile) throws IOException {
+		if (indexFile.length() < INDEX_ENTRY_BYTES) {
+			return 0;
+		}
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try {
+			file.seek(indexFile.length() - 8);
+			return file.readLong();
+		} finally {
+			file.close();
+		}
+	}
+
+	private static long timeOf(byte[] bytes, int start, int end, long fallback) throws IOException {
+		Matcher matcher = TIMESTAMP.matcher(new String(bytes, start, Math.min(end - start, 40), "UTF-8"));
+		if (matcher.find()) {
+			try {
+				return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(matcher.group(1) + " " + matcher.group(2)).getTime();
+			} catch (ParseException e) {
+				// not a timestamp after all
+			}
+		}
+		return fallback;
+	}
+
+	/**
+	 * The stored lines of the given apps that match the pattern (all lines if it is null) and
+	 * were written at or after <code>since</code>, ordered by time; with a tail only the last
+	 * <code>tail</code> of them.
+	 */
+	List<Line> query(String scope, List<String> apps, Pattern grep, long since, Integer tail) throws IOException {
+		List<Line> lines = new ArrayList<Line>();
+		for (String app : apps) {
+			File[] logs = getAppDirectory(scope, app).listFiles();
+			if (logs == null) {
+				continue;
+			}
+			for (File log : logs) {
+				File indexFile = new File(log.getPath() + ".idx");
+				if (log.getName().endsWith(".idx") || !indexFile.exists()) {
+					continue;
+				}
+				String name = log.getName();
+				String label = app + "/" + name.substring(0, name.indexOf('-')) + "/" +
+						name.substring(name.indexOf('-') + 1).replace('+', '/');
+				lines.addAll(query(log, indexFile, label, grep, since, tail));
+			}
+		}
+		Collections.sort(lines, new Comparator<Line>() {
+			@Override
+			public int compare(Line a, Line b) {
+				return a.time < b.time ? -1 : (a.time > b.time ? 1 : 0);
+			}
+		});
+		return tail != null && lines.size() > tail ? lines.subList(lines.size() - tail, lines.size()) : lines;
+	}
+
+	private List<Line> query(File log, File indexFile, String label, Pattern grep, long since, Integer tail)
+			throws IOException {
+		Deque<Line> matches = new ArrayDeque<Line>();
+		FileInputStream logIn = new FileInputStream(log);
+		FileInputStream indexIn = new FileInputStream(indexFile);
+		try {
+			FileChannel logChannel = logIn.getChannel();
+			FileChannel indexChannel = indexIn.getChannel();
+			long entries = indexChannel.size() / INDEX_ENTRY_BYTES;
+			if (entries == 0 || logChannel.size() == 0) {
+				return new ArrayList<Line>();
+			}
+			LongBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, entries * INDEX_ENTRY_BYTES).asLongBuffer();
+			MappedByteBuffer content = logChannel.map(FileChannel.MapMode.READ_ONLY, 0, logChannel.size());
+			int first = firstAtOrAfter(index, (int) entries, since);
+			for (int i = first; i < entries; i++) {
+				int start = (int) index.get(i * 2);
+				int end = i + 1 < entries ? (int) index.get((i + 1) * 2) : content.limit();
+				String text = decodeLine(content, start, end);
+				if (grep == null || grep.matcher(text).find()) {
+					matches.addLast(new Line(index.get(i * 2 + 1), label, text));
+					if (tail != null && matches.size() > tail) {
+						matches.removeFirst();
+					}
+				}
+			}
+		} finally {
+			logIn.close();
+			indexIn.close();
+		}
+		return new ArrayList<Line>(matches);
+	}
+
+	/**
+	 * Binary search for the first line written at or after the given time.
+	 */
+	private static int firstAtOrAfter(LongBuffer index, int entries, long since) {
+		int low = 0;
+		int high = entries;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (index.get(middle * 2 + 1) < since) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static String decodeLine(ByteBuffer content, int start, int end) throws IOException {
+		while (end > start && (content.get(end - 1) == '\n' || content.get(end - 1) == '\r')) {
+			end--;
+		}
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = content.get(start + i);
+		}
+		return new String(bytes, "UTF-8");
+	}
+
+	static class Line {
+
+		final long time;
+
+		final String source;
+
+		final String text;
+
+		Line(long time, String source, String text) {
+			this.time = time;
+			this.source = source;
+			this.text = text;
+		}
+	}
+}
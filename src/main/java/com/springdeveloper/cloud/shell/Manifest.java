@@ -0,0 +1,122 @@
+package com.springdeveloper.cloud.shell;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The services and applications listed in an aggregate app manifest file.
+ */
+class Manifest {
+
+	private final List<ServiceEntry> services = new ArrayList<ServiceEntry>();
+
+	private final List<AppEntry> applications = new ArrayList<AppEntry>();
+
+	static Manifest load(File file) throws IOException {
+		Reader reader = new FileReader(file);
+		try {
+			return parse((Map) new Yaml().load(reader), file.getParentFile());
+		} finally {
+			reader.close();
+		}
+	}
+
+	static Manifest parse(Map<String, Object> manifestMap, File baseDir) {
+		Manifest manifest = new Manifest();
+		List<Map<String, Object>> svcMaps = (List) manifestMap.get("services");
+		if (svcMaps != null) {
+			for (Map<String, Object> svcMap : svcMaps) {
+				manifest.services.add(new ServiceEntry(svcMap));
+			}
+		}
+		List<Map<String, Object>> appMaps = (List) manifestMap.get("applications");
+		if (appMaps != null) {
+			for (Map<String, Object> appMap : appMaps) {
+				manifest.applications.add(new AppEntry(appMap, baseDir));
+			}
+		}
+		return manifest;
+	}
+
+	List<ServiceEntry> getServices() {
+		return services;
+	}
+
+	List<AppEntry> getApplications() {
+		return applications;
+	}
+
+	static class ServiceEntry {
+
+		final String name;
+		final String label;
+		final String plan;
+		final String version;
+
+		ServiceEntry(Map<String, Object> svcMap) {
+			this.name = (String) svcMap.get("name");
+			this.label = (String) svcMap.get("label");
+			this.plan = (String) svcMap.get("plan");
+			this.version = (String) svcMap.get("version");
+		}
+
+		@Override
+		public String toString() {
+			return name + " [" + label + " " + version + "]";
+		}
+	}
+
+	static class AppEntry {
+
+		final String name;
+		final String runtime;
+		final String framework;
+		final int memory;
+		final int instances;
+		final String plan;
+		final List<String> urls;
+		final List<String> services;
+		final File path;
+
+		AppEntry(Map<String, Object> appMap, File baseDir) {
+			this.name = (String) appMap.get("name");
+			this.runtime = (String) appMap.get("runtime");
+			this.framework = (String) appMap.get("framework");
+			String mem = String.valueOf(appMap.get("memory"));
+			if (mem.contains("M")) {
+				mem = mem.substring(0, mem.indexOf("M"));
+			}
+			this.memory = Integer.valueOf(mem);
+			Integer instances = (Integer) appMap.get("instances");
+			this.instances = instances == null ? 1 : instances;
+			this.plan = (String) appMap.get("plan");
+			this.urls = toList(appMap.get("urls"));
+			this.services = toList(appMap.get("services"));
+			String appPath = (String) appMap.get("path");
+			if (appPath != null && !appPath.startsWith("/")) {
+				appPath = baseDir + "/" + appPath;
+			}
+			this.path = appPath == null ? null : new File(appPath);
+		}
+
+		private static List<String> toList(Object value) {
+			if (value == null) {
+				return Collections.emptyList();
+			}
+			return Collections.unmodifiableList(new ArrayList<String>((List) value));
+		}
+
+		@Override
+		public String toString() {
+			return name + " [" + instances + " x " + memory + "M " + runtime + "/" + framework + "]";
+		}
+	}
+}
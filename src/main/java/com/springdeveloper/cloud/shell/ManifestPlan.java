@@ -0,0 +1,100 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudEntity;
+import org.cloudfoundry.client.lib.domain.CloudService;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The actions needed to push or delete a manifest, computed locally from a single snapshot
+ * of the apps and services that already exist on the target.
+ */
+class ManifestPlan {
+
+	enum Action {
+		CREATE, UPDATE, DELETE, SKIP
+	}
+
+	interface ChangeCheck {
+		boolean isChanged(Manifest.AppEntry appEntry) throws IOException, InterruptedException;
+	}
+
+	private final Map<String, Action> serviceActions = new LinkedHashMap<String, Action>();
+
+	private final Map<String, Action> appActions = new LinkedHashMap<String, Action>();
+
+	/**
+	 * Plan a push: missing services and apps are created, and existing apps are updated only
+	 * when the change check reports that their bits differ from the last upload.
+	 */
+	static ManifestPlan forPush(Manifest manifest, List<CloudApplication> apps, List<CloudService> services,
+			ChangeCheck changeCheck) throws IOException, InterruptedException {
+		Map<String, CloudService> serviceIndex = index(services);
+		Map<String, CloudApplication> appIndex = index(apps);
+		ManifestPlan plan = new ManifestPlan();
+		for (Manifest.ServiceEntry svcEntry : manifest.getServices()) {
+			plan.serviceActions.put(svcEntry.name,
+					serviceIndex.containsKey(svcEntry.name) ? Action.SKIP : Action.CREATE);
+		}
+		for (Manifest.AppEntry appEntry : manifest.getApplications()) {
+			if (!appIndex.containsKey(appEntry.name)) {
+				plan.appActions.put(appEntry.name, Action.CREATE);
+			} else {
+				plan.appActions.put(appEntry.name, changeCheck.isChanged(appEntry) ? Action.UPDATE : Action.SKIP);
+			}
+		}
+		return plan;
+	}
+
+	static ManifestPlan forDelete(Manifest manifest, List<CloudApplication> apps, List<CloudService> services,
+			boolean deleteServices) {
+		Map<String, CloudApplication> appIndex = index(apps);
+		ManifestPlan plan = new ManifestPlan();
+		for (Manifest.AppEntry appEntry : manifest.getApplications()) {
+			plan.appActions.put(appEntry.name,
+					appIndex.containsKey(appEntry.name) ? Action.DELETE : Action.SKIP);
+		}
+		if (deleteServices) {
+			Map<String, CloudService> serviceIndex = index(services);
+			for (Manifest.ServiceEntry svcEntry : manifest.getServices()) {
+				plan.serviceActions.put(svcEntry.name,
+						serviceIndex.containsKey(svcEntry.name) ? Action.DELETE : Action.SKIP);
+			}
+		}
+		return plan;
+	}
+
+	private static <T extends CloudEntity> Map<String, T> index(List<T> entities) {
+		Map<String, T> index = new HashMap<String, T>(entities.size() * 2);
+		for (T entity : entities) {
+			index.put(entity.getName(), entity);
+		}
+		return index;
+	}
+
+	Action getServiceAction(String name) {
+		Action action = serviceActions.get(name);
+		return action == null ? Action.SKIP : action;
+	}
+
+	Action getAppAction(String name) {
+		Action action = appActions.get(name);
+		return action == null ? Action.SKIP : action;
+	}
+
+	String describe() {
+		StringBuilder description = new StringBuilder();
+		for (Map.Entry<String, Action> entry : serviceActions.entrySet()) {
+			description.append(entry.getValue() + " service " + entry.getKey() + "\n");
+		}
+		for (Map.Entry<String, Action> entry : appActions.entrySet()) {
+			description.append(entry.getValue() + " app " + entry.getKey() + "\n");
+		}
+		return description.toString();
+	}
+}
@@ -0,0 +1,142 @@
+package com.springdeveloper.cloud.shell;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The app, service, org and space names of the current session, for completing command options.
+ * Lookups never wait for the controller: they answer with the names already loaded, which may
+ * be stale or missing, and start a refresh in the background when the names are older than the
+ * time to live. Commands that create or delete apps or services mark the names stale, so the
+ * next lookup starts a refresh.
+ */
+class NameIndex {
+
+	static final long DEFAULT_TTL = 60000;
+
+	enum Kind {
+		APP, SERVICE, ORG, SPACE
+	}
+
+	/**
+	 * Loads the current names of a kind from the controller.
+	 */
+	interface Loader {
+
+		/**
+		 * Capture, on the thread asking for the names, the session to load them from.
+		 *
+		 * @return the work that loads the names, run in the background
+		 */
+		Callable<List<String>> prepare(Kind kind);
+	}
+
+	private final Loader loader;
+
+	private final long ttl;
+
+	private final Map<Kind, Entry> entries = new EnumMap<Kind, Entry>(Kind.class);
+
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private final ExecutorService refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "cf-name-index");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	NameIndex(Loader loader, long ttl) {
+		this.loader = loader;
+		this.ttl = ttl;
+		for (Kind kind : Kind.values()) {
+			entries.put(kind, new Entry());
+		}
+	}
+
+	/**
+	 * The names of the given kind loaded so far, starting a refresh if they are stale.
+	 */
+	List<String> get(Kind kind) {
+		Entry entry = entries.get(kind);
+		if (System.currentTimeMillis() - entry.loaded > ttl) {
+			refresh(kind);
+		}
+		return entry.names;
+	}
+
+	/**
+	 * Reload the names of the given kind in the background, unless a reload is already under way.
+	 */
+	private void refresh(Kind kind) {
+		final Entry entry = entries.get(kind);
+		if (!entry.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		final int started = generation.get();
+		final Callable<List<String>> load;
+		try {
+			load = loader.prepare(kind);
+		} catch (RuntimeException e) {
+			entry.refreshing.set(false);
+			throw e;
+		}
+		refresher.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					List<String> names = load.call();
+					// names loaded for a session that was left in the meantime are dropped
+					if (generation.get() == started) {
+						entry.names = Collections.unmodifiableList(names);
+						entry.loaded = System.currentTimeMillis();
+					}
+				} catch (Exception e) {
+					// keep serving the names loaded before and try again once they are stale
+					entry.loaded = System.currentTimeMillis();
+				} finally {
+					entry.refreshing.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Mark the names of the given kinds stale, so that the next lookup reloads them.
+	 */
+	void invalidate(Kind... kinds) {
+		for (Kind kind : kinds) {
+			entries.get(kind).loaded = 0;
+		}
+	}
+
+	/**
+	 * Forget all names, for example after switching to another target or space.
+	 */
+	void clear() {
+		generation.incrementAndGet();
+		for (Entry entry : entries.values()) {
+			entry.names = Collections.emptyList();
+			entry.loaded = 0;
+		}
+	}
+
+	private static class Entry {
+
+		volatile List<String> names = Collections.emptyList();
+
+		volatile long loaded;
+
+		final AtomicBoolean refreshing = new AtomicBoolean();
+	}
+}
@@ -0,0 +1,187 @@
+package com.springdeveloper.cloud.shell;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * A print stream that sends what a thread writes to the stream routed for that thread, or to
+ * the original stream when nothing is routed. Every call is passed straight on to the routed
+ * stream, so threads writing to different routes do not wait on each other. Routes are not
+ * inherited: workers that print for a routed thread, such as those of a bulk command, are given
+ * its {@link #getRoute() route} explicitly.
+ */
+class OutputRouter extends PrintStream {
+
+	private static final ThreadLocal<PrintStream> routes = new ThreadLocal<PrintStream>();
+
+	private final PrintStream fallback;
+
+	OutputRouter(PrintStream fallback) {
+		super(fallback, true);
+		this.fallback = fallback;
+	}
+
+	private PrintStream current() {
+		PrintStream route = routes.get();
+		return route != null ? route : fallback;
+	}
+
+	/**
+	 * Make {@link System#out} an output router, unless it already is one.
+	 */
+	static synchronized void install() {
+		if (!(System.out instanceof OutputRouter)) {
+			System.setOut(new OutputRouter(System.out));
+		}
+	}
+
+	/**
+	 * Route the output of the current thread to the given stream, or to the original stream if it is null.
+	 */
+	static void route(OutputStream out) {
+		if (out == null) {
+			routes.remove();
+		} else {
+			routes.set(out instanceof PrintStream ? (PrintStream) out : new PrintStream(out, true));
+		}
+	}
+
+	/**
+	 * The stream the current thread's output is routed to, or null if it is not routed.
+	 */
+	static PrintStream getRoute() {
+		return routes.get();
+	}
+
+	static void clearRoute() {
+		routes.remove();
+	}
+
+	@Override
+	public void write(int b) {
+		current().write(b);
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) {
+		current().write(buf, off, len);
+	}
+
+	@Override
+	public void flush() {
+		current().flush();
+	}
+
+	@Override
+	public boolean checkError() {
+		return current().checkError();
+	}
+
+	@Override
+	public void print(boolean b) {
+		current().print(b);
+	}
+
+	@Override
+	public void print(char c) {
+		current().print(c);
+	}
+
+	@Override
+	public void print(int i) {
+		current().print(i);
+	}
+
+	@Override
+	public void print(long l) {
+		current().print(l);
+	}
+
+	@Override
+	public void print(float f) {
+		current().print(f);
+	}
+
+	@Override
+	public void print(double d) {
+		current().print(d);
+	}
+
+	@Override
+	public void print(char[] s) {
+		current().print(s);
+	}
+
+	@Override
+	public void print(String s) {
+		current().print(s);
+	}
+
+	@Override
+	public void print(Object obj) {
+		current().print(obj);
+	}
+
+	@Override
+	public void println() {
+		current().println();
+	}
+
+	@Override
+	public void println(boolean x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(char x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(int x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(long x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(float x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(double x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(char[] x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(String x) {
+		current().println(x);
+	}
+
+	@Override
+	public void println(Object x) {
+		current().println(x);
+	}
+
+	@Override
+	public PrintStream format(String format, Object... args) {
+		current().format(format, args);
+		return this;
+	}
+
+	@Override
+	public PrintStream format(Locale l, String format, Object... args) {
+		current().format(l, format, args);
+		return this;
+	}
+}
@@ -0,0 +1,31 @@
+package com.springdeveloper.cloud.shell;
+
+import org.springframework.util.Assert;
+
+/**
+ * Spaces out operations so that no more than the given number start per second, across all
+ * threads sharing the limiter.
+ */
+class RateLimiter {
+
+	private final long intervalNanos;
+
+	private long next = System.nanoTime();
+
+	RateLimiter(double permitsPerSecond) {
+		Assert.isTrue(permitsPerSecond > 0, "The rate must be positive");
+		this.intervalNanos = (long) (1000000000L / permitsPerSecond);
+	}
+
+	void acquire() throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			wait = next - now;
+			next = Math.max(next, now) + intervalNanos;
+		}
+		if (wait > 0) {
+			Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+		}
+	}
+}
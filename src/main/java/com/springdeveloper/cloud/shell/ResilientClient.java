@@ -0,0 +1,267 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorates a client with retries, a request rate limit and a circuit breaker for one target.
+ * <p>
+ * Idempotent calls are retried with exponential backoff and jitter when the controller answers
+ * with a 5xx status, turns the request away with a 429 or cannot be reached; other calls are
+ * only retried after a 429, since the controller did not act on them. Once a number of calls
+ * in a row have failed the breaker opens and calls fail straight away until the cool-down has
+ * passed, after which a single call is let through to probe the controller.
+ */
+class ResilientClient implements InvocationHandler {
+
+	private static final Set<String> PASS_THROUGH = new HashSet<String>(Arrays.asList(
+			"login", "logout", "register", "unregister", "updatePassword", "registerRestLogListener",
+			"unRegisterRestLogListener", "getCloudControllerUrl", "equals", "hashCode", "toString"));
+
+	private static final Set<String> IDEMPOTENT = new HashSet<String>(Arrays.asList(
+			"uploadApplication", "startApplication", "stopApplication", "restartApplication",
+			"updateApplicationMemory", "updateApplicationInstances", "updateApplicationServices",
+			"updateApplicationUris", "updateApplicationEnv", "updateApplicationPlan"));
+
+	private final CloudFoundryOperations delegate;
+
+	private final Policy policy;
+
+	private ResilientClient(CloudFoundryOperations delegate, Policy policy) {
+		this.delegate = delegate;
+		this.policy = policy;
+	}
+
+	static CloudFoundryOperations wrap(CloudFoundryOperations client, Policy policy) {
+		return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new ResilientClient(client, policy));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (PASS_THROUGH.contains(method.getName())) {
+			return call(method, args);
+		}
+		boolean idempotent = method.getName().startsWith("get") || IDEMPOTENT.contains(method.getName());
+		for (int attempt = 0; ; attempt++) {
+			policy.beforeCall(method.getName());
+			Throwable failure = null;
+			try {
+				return call(method, args);
+			} catch (Throwable e) {
+				failure = e;
+			} finally {
+				// whatever happened, unless it was a transient failure, the controller answered,
+				// which also ends a probe of a half-open breaker
+				if (failure != null && isTransient(failure)) {
+					policy.failed();
+				} else {
+					policy.succeeded();
+				}
+			}
+			if (!isTransient(failure)) {
+				throw failure;
+			}
+			if (attempt >= policy.retries || !(idempotent || isThrottled(failure)) || policy.isOpen()) {
+				throw failure;
+			}
+			long delay = policy.backoff(attempt);
+			policy.retried.incrementAndGet();
+			System.out.println("Retrying " + method.getName() + " after " + describe(failure) + " in " + delay + " ms (" +
+					(attempt + 1) + " of " + policy.retries + ")");
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException interrupted) {
+				Thread.currentThread().interrupt();
+				throw failure;
+			}
+		}
+	}
+
+	private Object call(Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(delegate, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static boolean isTransient(Throwable e) {
+		if (e instanceof ResourceAccessException) {
+			return true;
+		}
+		if (e instanceof CloudFoundryException && ((CloudFoundryException) e).getStatusCode() != null) {
+			int status = ((CloudFoundryException) e).getStatusCode().value();
+			return status >= 500 || status == 429;
+		}
+		return false;
+	}
+
+	private static boolean isThrottled(Throwable e) {
+		return e instanceof CloudFoundryException && ((CloudFoundryException) e).getStatusCode() != null &&
+				((CloudFoundryException) e).getStatusCode().value() == 429;
+	}
+
+	private static String describe(Throwable e) {
+		if (e instanceof CloudFoundryException) {
+			return String.valueOf(((CloudFoundryException) e).getStatusCode());
+		}
+		return e.getMessage();
+	}
+
+	/**
+	 * Thrown instead of calling the controller while the circuit breaker is open.
+	 */
+	static class CircuitOpenException extends RuntimeException {
+
+		CircuitOpenException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * The retry, rate and breaker settings for a target, along with the breaker state and the
+	 * counts of what happened. Shared by all clients created for the same target.
+	 */
+	static class Policy {
+
+		static final int DEFAULT_RETRIES = 3;
+
+		static final long DEFAULT_BASE_DELAY = 200;
+
+		static final long MAX_DELAY = 10000;
+
+		static final int DEFAULT_BREAKER_THRESHOLD = 5;
+
+		static final long DEFAULT_BREAKER_COOL_DOWN = 30000;
+
+		private final String target;
+
+		private final Random random = new Random();
+
+		volatile int retries = DEFAULT_RETRIES;
+
+		volatile long baseDelay = DEFAULT_BASE_DELAY;
+
+		volatile int breakerThreshold = DEFAULT_BREAKER_THRESHOLD;
+
+		volatile long breakerCoolDown = DEFAULT_BREAKER_COOL_DOWN;
+
+		private volatile Double rate;
+
+		private volatile RateLimiter limiter;
+
+		private int consecutiveFailures;
+
+		private long openUntil;
+
+		private boolean probing;
+
+		final AtomicLong calls = new AtomicLong();
+
+		final AtomicLong retried = new AtomicLong();
+
+		final AtomicLong failures = new AtomicLong();
+
+		final AtomicLong breakerOpened = new AtomicLong();
+
+		final AtomicLong rejected = new AtomicLong();
+
+		Policy(String target) {
+			this.target = target;
+		}
+
+		Double getRate() {
+			return rate;
+		}
+
+		/**
+		 * Limit the calls to the target to the given number per second, or lift the limit with null.
+		 */
+		void setRate(Double rate) {
+			this.rate = rate;
+			this.limiter = rate == null ? null : new RateLimiter(rate);
+		}
+
+		void beforeCall(String method) {
+			synchronized (this) {
+				long now = System.currentTimeMillis();
+				if (openUntil > 0) {
+					if (now < openUntil || probing) {
+						rejected.incrementAndGet();
+						throw new CircuitOpenException("Calls to " + target + " are suspended for " +
+								(Math.max(0, openUntil - now) + 999) / 1000 + " s after " + consecutiveFailures +
+								" failures in a row, not calling " + method);
+					}
+					probing = true;
+				}
+			}
+			calls.incrementAndGet();
+			RateLimiter current = limiter;
+			if (current != null) {
+				try {
+					current.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		synchronized void succeeded() {
+			consecutiveFailures = 0;
+			openUntil = 0;
+			probing = false;
+		}
+
+		synchronized void failed() {
+			failures.incrementAndGet();
+			consecutiveFailures++;
+			if (probing || (openUntil == 0 && consecutiveFailures >= breakerThreshold)) {
+				openUntil = System.currentTimeMillis() + breakerCoolDown;
+				probing = false;
+				breakerOpened.incrementAndGet();
+				System.out.println("Suspending calls to " + target + " for " + breakerCoolDown / 1000 + " s after " +
+						consecutiveFailures + " failures in a row");
+			}
+		}
+
+		synchronized boolean isOpen() {
+			return openUntil > 0;
+		}
+
+		/**
+		 * A delay between half and all of the exponentially growing backoff for the given attempt.
+		 */
+		long backoff(int attempt) {
+			long delay = Math.min(MAX_DELAY, baseDelay << Math.min(attempt, 20));
+			synchronized (random) {
+				return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+			}
+		}
+
+		String describe() {
+			return target + " :: " + calls.get() + " calls, " + retried.get() + " retries, " + failures.get() +
+					" transient failures, breaker opened " + breakerOpened.get() + " times, " + rejected.get() +
+					" calls rejected while open" + (isOpen() ? " (open now)" : "");
+		}
+
+		void resetCounts() {
+			calls.set(0);
+			retried.set(0);
+			failures.set(0);
+			breakerOpened.set(0);
+			rejected.set(0);
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.RestLogEntry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * Fixed-capacity ring buffer of REST log entries. Writers never block; once the buffer is
+ * full the oldest entries are overwritten.
+ * <p>
+ * The client library reports an entry after each request completes on the calling thread,
+ * so latency is measured from the last {@link #markBoundary()} call on that thread, which a
+ * client returned by {@link #timed(CloudFoundryOperations)} makes just before each call, or from
+ * the previous request when one client call makes several, to the time the entry is reported.
+ */
+class RestLogBuffer {
+
+	static final int DEFAULT_CAPACITY = 1000;
+
+	private static final ThreadLocal<Long> boundary = new ThreadLocal<Long>();
+
+	private static final ThreadLocal<AtomicLong> callCounter = new ThreadLocal<AtomicLong>();
+
+	private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-fA-F-]{32,36}|[0-9]+");
+
+	private static final Set<String> COLLECTIONS = new HashSet<String>(Arrays.asList(
+			"apps", "services", "service_instances", "service_bindings", "spaces", "organizations",
+			"routes", "domains", "users", "instances", "files"));
+
+	private final AtomicReferenceArray<Record> records;
+
+	private final AtomicLong next = new AtomicLong();
+
+	private final AtomicLong clearedAt = new AtomicLong();
+
+	RestLogBuffer(int capacity) {
+		this.records = new AtomicReferenceArray<Record>(capacity);
+	}
+
+	/**
+	 * Mark the start of a call to the controller on the current thread.
+	 */
+	static void markBoundary() {
+		boundary.set(System.nanoTime());
+	}
+
+	/**
+	 * The client, marking a boundary on the calling thread just before each of its calls so that
+	 * the entries it reports are timed from the start of the call. Decorators that wait before
+	 * calling, such as the resilient client, should wrap the returned client.
+	 */
+	static CloudFoundryOperations timed(final CloudFoundryOperations client) {
+		return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						markBoundary();
+						try {
+							return method.invoke(client, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	/**
+	 * Count the requests made from now on by the current thread. Workers that make requests for
+	 * the thread, such as those of a bulk command, pass its {@link #getCallCounter() counter} on
+	 * to {@link #countCalls(AtomicLong)}.
+	 *
+	 * @return the count, which keeps growing until {@link #stopCounting()}
+	 */
+	static AtomicLong countCalls() {
+		AtomicLong counter = new AtomicLong();
+		callCounter.set(counter);
+		return counter;
+	}
+
+	/**
+	 * Add the requests made from now on by the current thread to the given count, or stop
+	 * counting them if it is null.
+	 */
+	static void countCalls(AtomicLong counter) {
+		if (counter != null) {
+			callCounter.set(counter);
+		} else {
+			callCounter.remove();
+		}
+	}
+
+	/**
+	 * The count the current thread's requests are added to, or null if they are not counted.
+	 */
+	static AtomicLong getCallCounter() {
+		return callCounter.get();
+	}
+
+	static void stopCounting() {
+		callCounter.remove();
+	}
+
+	void add(RestLogEntry entry) {
+		AtomicLong counter = callCounter.get();
+		if (counter != null) {
+			counter.incrementAndGet();
+		}
+		long now = System.nanoTime();
+		Long start = boundary.get();
+		boundary.set(now);
+		long sequence = next.getAndIncrement();
+		records.set((int) (sequence % records.length()),
+				new Record(sequence, entry, start == null ? -1 : now - start));
+	}
+
+	void clear() {
+		clearedAt.set(next.get());
+	}
+
+	/**
+	 * The number of entries added since the buffer was created, including overwritten and cleared ones.
+	 */
+	long getTotal() {
+		return next.get();
+	}
+
+	int capacity() {
+		return records.length();
+	}
+
+	/**
+	 * The buffered records, oldest first.
+	 */
+	List<Record> snapshot() {
+		long end = next.get();
+		long start = Math.max(clearedAt.get(), end - records.length());
+		List<Record> snapshot = new ArrayList<Record>((int) (end - start));
+		for (long sequence = start; sequence < end; sequence++) {
+			Record record = records.get((int) (sequence % records.length()));
+			if (record != null && record.sequence == sequence) {
+				snapshot.add(record);
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Per method and endpoint counts, error rates and latency percentiles for the buffered records.
+	 */
+	String stats() {
+		Map<String, List<Record>> byEndpoint = new TreeMap<String, List<Record>>();
+		for (Record record : snapshot()) {
+			String key = record.entry.getMethod() + " " + endpoint(record.entry);
+			List<Record> group = byEndpoint.get(key);
+			if (group == null) {
+				group = new ArrayList<Record>();
+				byEndpoint.put(key, group);
+			}
+			group.add(record);
+		}
+		StringBuilder stats = new StringBuilder();
+		stats.append(String.format("%-50s %7s %7s %6s %8s %8s %8s", "ENDPOINT", "COUNT", "ERRORS", "ERR%",
+				"P50(ms)", "P95(ms)", "P99(ms)"));
+		for (Map.Entry<String, List<Record>> group : byEndpoint.entrySet()) {
+			int errors = 0;
+			long[] latencies = new long[group.getValue().size()];
+			int timed = 0;
+			for (Record record : group.getValue()) {
+				if (record.isError()) {
+					errors++;
+				}
+				if (record.latencyNanos >= 0) {
+					latencies[timed++] = record.latencyNanos;
+				}
+			}
+			Arrays.sort(latencies, 0, timed);
+			int count = group.getValue().size();
+			stats.append("\n");
+			stats.append(String.format("%-50s %7d %7d %5.1f%% %8s %8s %8s", group.getKey(), count, errors,
+					100.0 * errors / count, percentile(latencies, timed, 50), percentile(latencies, timed, 95),
+					percentile(latencies, timed, 99)));
+		}
+		return stats.toString();
+	}
+
+	private static String percentile(long[] sorted, int length, int percentile) {
+		if (length == 0) {
+			return "-";
+		}
+		int rank = (int) Math.ceil(percentile / 100.0 * length);
+		return String.valueOf(sorted[Math.max(rank, 1) - 1] / 1000000);
+	}
+
+	/**
+	 * The request path with names and ids replaced by placeholders, so that calls for
+	 * different apps or services are grouped together.
+	 */
+	static String endpoint(RestLogEntry entry) {
+		if (entry.getUri() == null || entry.getUri().getPath() == null) {
+			return "?";
+		}
+		StringBuilder endpoint = new StringBuilder();
+		String previous = null;
+		for (String segment : entry.getUri().getPath().split("/")) {
+			if (segment.length() == 0) {
+				continue;
+			}
+			endpoint.append("/");
+			if (COLLECTIONS.contains(previous) || ID_PATTERN.matcher(segment).matches()) {
+				endpoint.append("{id}");
+			} else {
+				endpoint.append(segment);
+			}
+			previous = segment;
+		}
+		return endpoint.length() == 0 ? "/" : endpoint.toString();
+	}
+
+	static class Record {
+
+		final long sequence;
+
+		final RestLogEntry entry;
+
+		final long latencyNanos;
+
+		Record(long sequence, RestLogEntry entry, long latencyNanos) {
+			this.sequence = sequence;
+			this.entry = entry;
+			this.latencyNanos = latencyNanos;
+		}
+
+		boolean isError() {
+			return entry.getHttpStatus() == null || entry.getHttpStatus().value() >= 400;
+		}
+	}
+}
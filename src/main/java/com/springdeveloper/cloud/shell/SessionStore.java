@@ -0,0 +1,174 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.domain.CloudEntity;
+import org.cloudfoundry.client.lib.domain.CloudOrganization;
+import org.cloudfoundry.client.lib.domain.CloudSpace;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Login sessions persisted between shell runs, one per target and user. Each session keeps
+ * the access token, the resolved org and space and the controller version so that a later
+ * login can skip authentication and the space lookup until the token expires.
+ */
+class SessionStore {
+
+	private static final long EXPIRY_MARGIN = 60000;
+
+	private final File file;
+
+	SessionStore(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * The saved session for the target and user, or null if there is none or it cannot be parsed.
+	 */
+	synchronized Session load(String target, String email) {
+		Properties properties = ShellHome.load(file);
+		String prefix = key(target, email);
+		String token = properties.getProperty(prefix + "token");
+		String expires = properties.getProperty(prefix + "expires");
+		if (token == null || expires == null) {
+			return null;
+		}
+		try {
+			DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(token);
+			accessToken.setTokenType(properties.getProperty(prefix + "tokenType"));
+			accessToken.setExpiration(new Date(Long.parseLong(expires)));
+			String refreshToken = properties.getProperty(prefix + "refreshToken");
+			if (refreshToken != null) {
+				accessToken.setRefreshToken(new DefaultOAuth2RefreshToken(refreshToken));
+			}
+			Session session = new Session(target, email, accessToken,
+					Boolean.parseBoolean(properties.getProperty(prefix + "v1")));
+			session.org = properties.getProperty(prefix + "org");
+			session.space = properties.getProperty(prefix + "space");
+			String orgGuid = properties.getProperty(prefix + "orgGuid");
+			String spaceGuid = properties.getProperty(prefix + "spaceGuid");
+			session.orgGuid = orgGuid == null ? null : UUID.fromString(orgGuid);
+			session.spaceGuid = spaceGuid == null ? null : UUID.fromString(spaceGuid);
+			if (session.spaceGuid != null && (session.org == null || session.space == null || session.orgGuid == null)) {
+				return null;
+			}
+			return session;
+		} catch (IllegalArgumentException e) {
+			// a damaged entry is treated like a missing one, so the user logs in with the password
+			return null;
+		}
+	}
+
+	/**
+	 * Save the session, unless its token carries no expiry time to tell when it must not be reused.
+	 */
+	synchronized void save(Session session) throws IOException {
+		if (session.token == null || session.token.getExpiration() == null) {
+			return;
+		}
+		Properties properties = ShellHome.load(file);
+		String prefix = key(session.target, session.email);
+		removeKeys(properties, prefix);
+		properties.setProperty(prefix + "token", session.token.getValue());
+		properties.setProperty(prefix + "expires", String.valueOf(session.token.getExpiration().getTime()));
+		if (session.token.getTokenType() != null) {
+			properties.setProperty(prefix + "tokenType", session.token.getTokenType());
+		}
+		if (session.token.getRefreshToken() != null) {
+			properties.setProperty(prefix + "refreshToken", session.token.getRefreshToken().getValue());
+		}
+		properties.setProperty(prefix + "v1", String.valueOf(session.v1));
+		if (session.org != null) {
+			properties.setProperty(prefix + "org", session.org);
+			properties.setProperty(prefix + "space", session.space);
+			properties.setProperty(prefix + "orgGuid", session.orgGuid.toString());
+			properties.setProperty(prefix + "spaceGuid", session.spaceGuid.toString());
+		}
+		ShellHome.store(properties, file, "cloud-shell sessions");
+	}
+
+	synchronized void remove(String target, String email) throws IOException {
+		Properties properties = ShellHome.load(file);
+		if (removeKeys(properties, key(target, email))) {
+			ShellHome.store(properties, file, "cloud-shell sessions");
+		}
+	}
+
+	private static boolean removeKeys(Properties properties, String prefix) {
+		boolean removed = false;
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith(prefix)) {
+				properties.remove(name);
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	private static String key(String target, String email) {
+		return target + "|" + email + "|";
+	}
+
+	static class Session {
+
+		final String target;
+
+		final String email;
+
+		final OAuth2AccessToken token;
+
+		final boolean v1;
+
+		String org;
+
+		String space;
+
+		UUID orgGuid;
+
+		UUID spaceGuid;
+
+		Session(String target, String email, OAuth2AccessToken token, boolean v1) {
+			this.target = target;
+			this.email = email;
+			this.token = token;
+			this.v1 = v1;
+		}
+
+		void setSpace(CloudSpace space) {
+			this.org = space.getOrganization().getName();
+			this.orgGuid = space.getOrganization().getMeta().getGuid();
+			this.space = space.getName();
+			this.spaceGuid = space.getMeta().getGuid();
+		}
+
+		boolean isUsable(String org, String space) {
+			if (token.getExpiration() == null
+					|| token.getExpiration().getTime() - EXPIRY_MARGIN < System.currentTimeMillis()) {
+				return false;
+			}
+			return v1 || (this.spaceGuid != null && this.org.equals(org) && this.space.equals(space));
+		}
+
+		/**
+		 * Where the session's apps live: the target, and on v2 also the org and space, since apps
+		 * in different spaces of one target can have the same name.
+		 */
+		String getAppScope() {
+			return spaceGuid == null ? target : target + "|" + orgGuid + "/" + spaceGuid;
+		}
+
+		CloudSpace getSpace() {
+			if (spaceGuid == null) {
+				return null;
+			}
+			CloudOrganization organization = new CloudOrganization(new CloudEntity.Meta(orgGuid, null, null), org);
+			return new CloudSpace(new CloudEntity.Meta(spaceGuid, null, null), space, organization);
+		}
+	}
+}
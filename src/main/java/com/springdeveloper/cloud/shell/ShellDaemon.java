@@ -0,0 +1,318 @@
+package com.springdeveloper.cloud.shell;
+
+import org.springframework.shell.converters.BooleanConverter;
+import org.springframework.shell.converters.DoubleConverter;
+import org.springframework.shell.converters.EnumConverter;
+import org.springframework.shell.converters.IntegerConverter;
+import org.springframework.shell.converters.LongConverter;
+import org.springframework.shell.converters.SimpleFileConverter;
+import org.springframework.shell.converters.StringConverter;
+import org.springframework.shell.core.SimpleParser;
+import org.springframework.shell.event.ParseResult;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * A long-lived shell that runs commands sent by thin clients, so that the JVM, the clients,
+ * their connections and the caches stay warm between invocations.
+ * <p>
+ * The daemon listens on a loopback port written, together with a random token, to
+ * <code>daemon.properties</code> in the shell home, which only the current user can read.
+ * Each request names a session; every session has its own commands instance, so logins and
+ * targets are kept apart, and commands in one session run one at a time while different
+ * sessions run concurrently. The daemon exits once it has been idle for the idle timeout.
+ */
+class ShellDaemon {
+
+	static final String STATUS_PREFIX = "--cloud-shell-status ";
+
+	static final String STOP = "--stop";
+
+	static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000L;
+
+	static final int MAX_CONCURRENT_REQUESTS = 16;
+
+	/**
+	 * How long a client may take to send its token and command line before it is disconnected.
+	 */
+	static final int REQUEST_TIMEOUT = 10000;
+
+	private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+	private final AtomicLong lastActivity = new AtomicLong(System.currentTimeMillis());
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final ExecutorService workers = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "cf-daemon-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Holds the stores of the files in the shell home, which all sessions share so that their
+	 * read-modify-write updates of the same file are serialized rather than undoing each other.
+	 */
+	private final CloudFoundryCommands shared = new CloudFoundryCommands();
+
+	private final long idleTimeout;
+
+	private final String token;
+
+	private ServerSocket server;
+
+	ShellDaemon(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		this.token = Fingerprint.toHex(random);
+	}
+
+	static void main(String[] args) throws IOException {
+		long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--idle-timeout".equals(args[i])) {
+				idleTimeout = Long.parseLong(args[i + 1]) * 1000L;
+			}
+		}
+		new ShellDaemon(idleTimeout).serve();
+	}
+
+	static File getDaemonFile() {
+		return ShellHome.getFile("daemon.properties");
+	}
+
+	void serve() throws IOException {
+		PrintStream console = System.out;
+		OutputRouter.install();
+		System.setIn(new ByteArrayInputStream(new byte[0]));
+		Logger parserLogger = Logger.getLogger(SimpleParser.class.getName());
+		parserLogger.setUseParentHandlers(false);
+		parserLogger.addHandler(new RoutedHandler());
+		server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Properties properties = new Properties();
+		properties.setProperty("port", String.valueOf(server.getLocalPort()));
+		properties.setProperty("token", token);
+		properties.setProperty("process", ManagementFactory.getRuntimeMXBean().getName());
+		ShellHome.store(properties, getDaemonFile(), "cloud-shell daemon");
+		console.println("cloud-shell daemon listening on 127.0.0.1:" + server.getLocalPort() +
+				", exiting after " + idleTimeout / 1000 + " s idle");
+		startIdleWatch();
+		try {
+			while (true) {
+				final Socket socket;
+				try {
+					socket = server.accept();
+				} catch (SocketException e) {
+					break;
+				}
+				lastActivity.set(System.currentTimeMillis());
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				});
+			}
+		} finally {
+			getDaemonFile().delete();
+			workers.shutdownNow();
+		}
+		console.println("cloud-shell daemon stopped");
+	}
+
+	private void startIdleWatch() {
+		Thread watch = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!server.isClosed()) {
+					try {
+						Thread.sleep(Math.min(10000, idleTimeout));
+					} catch (InterruptedException e) {
+						return;
+					}
+					if (active.get() == 0 && System.currentTimeMillis() - lastActivity.get() > idleTimeout) {
+						stop();
+					}
+				}
+			}
+		}, "cf-daemon-idle");
+		watch.setDaemon(true);
+		watch.start();
+	}
+
+	private void stop() {
+		try {
+			server.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	private void handle(Socket socket) {
+		active.incrementAndGet();
+		try {
+			// a client that connects and sends nothing would otherwise hold a worker, and keep the
+			// daemon from going idle, until it disconnects
+			socket.setSoTimeout(REQUEST_TIMEOUT);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			OutputStream out = socket.getOutputStream();
+			PrintStream reply = new PrintStream(out, true, "UTF-8");
+			if (!token.equals(in.readLine())) {
+				reply.println("Invalid daemon token.");
+				reply.println(STATUS_PREFIX + 2);
+				return;
+			}
+			String sessionName = in.readLine();
+			String line = in.readLine();
+			if (sessionName == null || line == null) {
+				return;
+			}
+			socket.setSoTimeout(0);
+			if (STOP.equals(line)) {
+				reply.println("Stopping daemon.");
+				reply.println(STATUS_PREFIX + 0);
+				stop();
+				return;
+			}
+			OutputRouter.route(out);
+			boolean ok;
+			try {
+				ok = getSession(sessionName).execute(line.trim());
+			} finally {
+				System.out.flush();
+				OutputRouter.clearRoute();
+			}
+			reply.println(STATUS_PREFIX + (ok ? 0 : 1));
+		} catch (IOException e) {
+			// the client went away, or took too long to send its request
+		} finally {
+			lastActivity.set(System.currentTimeMillis());
+			active.decrementAndGet();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// nothing more to do
+			}
+		}
+	}
+
+	private Session getSession(String name) {
+		synchronized (sessions) {
+			Session session = sessions.get(name);
+			if (session == null) {
+				session = new Session(shared);
+				sessions.put(name, session);
+			}
+			return session;
+		}
+	}
+
+	/**
+	 * One isolated shell session: its own commands instance and parser.
+	 */
+	private static class Session {
+
+		private final CloudFoundryCommands commands = new CloudFoundryCommands();
+
+		private final SimpleParser parser = new SimpleParser();
+
+		Session(CloudFoundryCommands shared) {
+			commands.interactive = false;
+			commands.sessionStore = shared.sessionStore;
+			commands.fingerprints = shared.fingerprints;
+			commands.targetInfoCache = shared.targetInfoCache;
+			commands.logStore = shared.logStore;
+			parser.add(commands);
+			parser.add(new CloudNameConverter(commands));
+			parser.add(new StringConverter());
+			parser.add(new BooleanConverter());
+			parser.add(new IntegerConverter());
+			parser.add(new LongConverter());
+			parser.add(new DoubleConverter());
+			parser.add(new EnumConverter());
+			parser.add(new SimpleFileConverter());
+		}
+
+		/**
+		 * Parse and run a command line, printing its result.
+		 *
+		 * @return whether the command ran without an error
+		 */
+		synchronized boolean execute(String line) {
+			if (line.length() == 0) {
+				return true;
+			}
+			ParseResult parseResult = parser.parse(line);
+			if (parseResult == null) {
+				return false;
+			}
+			parseResult = commands.beforeInvocation(parseResult);
+			try {
+				Object result = parseResult.getMethod().invoke(parseResult.getInstance(), parseResult.getArguments());
+				boolean failed = commands.hasFailed();
+				commands.afterReturningInvocation(parseResult, result);
+				if (result != null) {
+					System.out.println(result);
+				}
+				return !failed;
+			} catch (InvocationTargetException e) {
+				commands.afterThrowingInvocation(parseResult, e.getCause());
+				System.out.println(e.getCause().getMessage() != null ? e.getCause().getMessage() : e.getCause().toString());
+				return false;
+			} catch (IllegalAccessException e) {
+				System.out.println(e.getMessage());
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Sends the parser's messages, such as a missing mandatory option, to the requesting client.
+	 */
+	private static class RoutedHandler extends Handler {
+
+		@Override
+		public void publish(LogRecord record) {
+			System.out.println(record.getMessage());
+		}
+
+		@Override
+		public void flush() {
+			System.out.flush();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
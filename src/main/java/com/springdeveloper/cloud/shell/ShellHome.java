@@ -0,0 +1,80 @@
+package com.springdeveloper.cloud.shell;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Location and helpers for the files the shell keeps between runs, under
+ * <code>~/.cloud-shell</code> by default or the <code>cloudshell.home</code> system property.
+ */
+class ShellHome {
+
+	static File getDirectory() {
+		String home = System.getProperty("cloudshell.home");
+		File dir = home != null ? new File(home) : new File(System.getProperty("user.home"), ".cloud-shell");
+		if (!dir.exists() && dir.mkdirs()) {
+			restrictToOwner(dir);
+			dir.setExecutable(false, false);
+			dir.setExecutable(true, true);
+		}
+		return dir;
+	}
+
+	static File getFile(String name) {
+		return new File(getDirectory(), name);
+	}
+
+	static Properties load(File file) {
+		Properties properties = new Properties();
+		if (file.exists()) {
+			try {
+				InputStream in = new FileInputStream(file);
+				try {
+					properties.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// an unreadable file is treated like a missing one
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Write the properties to a temporary file readable only by the current user and move it into place.
+	 * The temporary file has a unique name, so that concurrent writers never write into each other's file.
+	 */
+	static void store(Properties properties, File file, String comment) throws IOException {
+		File temp = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+		try {
+			restrictToOwner(temp);
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				properties.store(out, comment);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) {
+					throw new IOException("Unable to write " + file);
+				}
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	static void restrictToOwner(File file) {
+		file.setReadable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(false, false);
+		file.setWritable(true, true);
+	}
+}
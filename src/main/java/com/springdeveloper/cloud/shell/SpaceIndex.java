@@ -0,0 +1,43 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.domain.CloudSpace;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The spaces visible to the logged-in user, indexed by org name and space name.
+ */
+class SpaceIndex {
+
+	private final Map<String, Map<String, CloudSpace>> orgs = new TreeMap<String, Map<String, CloudSpace>>();
+
+	private int size;
+
+	SpaceIndex(List<CloudSpace> spaces) {
+		for (CloudSpace space : spaces) {
+			String org = space.getOrganization().getName();
+			Map<String, CloudSpace> orgSpaces = orgs.get(org);
+			if (orgSpaces == null) {
+				orgSpaces = new TreeMap<String, CloudSpace>();
+				orgs.put(org, orgSpaces);
+			}
+			orgSpaces.put(space.getName(), space);
+			size++;
+		}
+	}
+
+	CloudSpace get(String org, String space) {
+		Map<String, CloudSpace> orgSpaces = orgs.get(org);
+		return orgSpaces == null ? null : orgSpaces.get(space);
+	}
+
+	Map<String, Map<String, CloudSpace>> getOrgs() {
+		return orgs;
+	}
+
+	int size() {
+		return size;
+	}
+}
@@ -0,0 +1,222 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.InstanceInfo;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Shows the state of a set of apps and their instances, refreshed on an interval. Each refresh
+ * lists the apps once and picks out the watched ones; instance details are only fetched for apps
+ * whose summary changed. On a terminal only the rows that changed
+ * are redrawn, otherwise the changed rows are printed as they change.
+ */
+class StatsWatcher {
+
+	static final long MAX_INTERVAL = 60000;
+
+	private static final String ESC = "\u001b[";
+
+	private final CloudFoundryOperations client;
+
+	private final List<String> names = new ArrayList<String>();
+
+	private final List<Pattern> patterns = new ArrayList<Pattern>();
+
+	private final PrintStream out;
+
+	private final boolean ansi;
+
+	private final Map<String, String> summaries = new HashMap<String, String>();
+
+	private final Map<String, List<String>> instanceRows = new HashMap<String, List<String>>();
+
+	private List<String> screen = Collections.emptyList();
+
+	StatsWatcher(CloudFoundryOperations client, List<String> apps, PrintStream out, boolean ansi) {
+		this.client = client;
+		for (String app : apps) {
+			if (Glob.isPattern(app)) {
+				patterns.add(Glob.compile(app));
+			} else {
+				names.add(app);
+			}
+		}
+		this.out = out;
+		this.ansi = ansi;
+	}
+
+	/**
+	 * Refresh until the timeout passes (zero for no timeout) or a line is entered on the given
+	 * input. The interval doubles while the controller is slow to answer or turns requests away,
+	 * and returns to the requested interval once it keeps up again.
+	 */
+	void watch(long intervalMillis, long timeoutMillis, InputStream stopInput) throws IOException, InterruptedException {
+		long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE;
+		long interval = intervalMillis;
+		SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss");
+		while (System.currentTimeMillis() < deadline) {
+			long started = System.currentTimeMillis();
+			try {
+				List<String> rows = refresh();
+				long took = System.currentTimeMillis() - started;
+				interval = took > interval / 2 ? Math.min(interval * 2, MAX_INTERVAL) : Math.max(intervalMillis, interval / 2);
+				rows.add("Updated " + time.format(new Date()) + " in " + took + " ms, next in " + interval / 1000.0 +
+						" s. Press Enter to stop.");
+				render(rows, false);
+			} catch (CloudFoundryException e) {
+				if (!isBusy(e)) {
+					throw e;
+				}
+				interval = Math.min(interval * 2, MAX_INTERVAL);
+				List<String> rows = new ArrayList<String>(screen.isEmpty() ? screen : screen.subList(0, screen.size() - 1));
+				rows.add("Controller busy (" + e.getStatusCode() + ") at " + time.format(new Date()) + ", next in " +
+						interval / 1000.0 + " s. Press Enter to stop.");
+				render(rows, true);
+			}
+			long wakeUp = Math.min(started + interval, deadline);
+			while (System.currentTimeMillis() < wakeUp) {
+				if (stopInput != null && stopInput.available() > 0) {
+					while (stopInput.available() > 0) {
+						stopInput.read();
+					}
+					return;
+				}
+				Thread.sleep(Math.min(100, Math.max(1, wakeUp - System.currentTimeMillis())));
+			}
+		}
+	}
+
+	private static boolean isBusy(CloudFoundryException e) {
+		int status = e.getStatusCode() == null ? 0 : e.getStatusCode().value();
+		return status == 429 || status == HttpStatus.SERVICE_UNAVAILABLE.value() ||
+				status == HttpStatus.GATEWAY_TIMEOUT.value() || status == HttpStatus.BAD_GATEWAY.value();
+	}
+
+	/**
+	 * Fetch the current state and return the rows to show.
+	 */
+	List<String> refresh() {
+		List<CloudApplication> apps = fetchApplications();
+		int width = 0;
+		for (CloudApplication app : apps) {
+			width = Math.max(width, app.getName().length());
+		}
+		List<String> rows = new ArrayList<String>();
+		for (CloudApplication app : apps) {
+			String summary = pad(app.getName(), width) + "  " + pad(String.valueOf(app.getState()), 8) + "  " +
+					app.getRunningInstances() + "/" + app.getInstances() + " running  " + app.getMemory() + "M";
+			String previous = summaries.put(app.getName(), summary);
+			if (!summary.equals(previous)) {
+				instanceRows.put(app.getName(), fetchInstanceRows(app));
+			}
+			rows.add(summary);
+			rows.addAll(instanceRows.get(app.getName()));
+		}
+		if (apps.isEmpty()) {
+			rows.add("No matching apps.");
+		}
+		return rows;
+	}
+
+	private List<CloudApplication> fetchApplications() {
+		List<CloudApplication> apps = new ArrayList<CloudApplication>();
+		for (CloudApplication app : client.getApplications()) {
+			if (matches(app.getName())) {
+				apps.add(app);
+			}
+		}
+		return apps;
+	}
+
+	private boolean matches(String name) {
+		if (names.contains(name)) {
+			return true;
+		}
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(name).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<String> fetchInstanceRows(CloudApplication app) {
+		List<String> rows = new ArrayList<String>();
+		if (app.getState() != CloudApplication.AppState.STARTED) {
+			return rows;
+		}
+		try {
+			for (InstanceInfo instance : client.getApplicationInstances(app.getName()).getInstances()) {
+				rows.add("  " + instance.getIndex() + ": " + instance.getState() + " since " + instance.getSince());
+			}
+		} catch (CloudFoundryException e) {
+			// the controller answers with a bad request while the app is still staging
+			if (e.getStatusCode() != HttpStatus.BAD_REQUEST) {
+				throw e;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Show the rows, the last of which is the status line. Without a terminal the status line is
+	 * only printed along with other changes or when the controller is busy.
+	 */
+	private void render(List<String> rows, boolean busy) {
+		if (!ansi) {
+			boolean changed = false;
+			for (int i = 0; i < rows.size() - 1; i++) {
+				if (i >= screen.size() - 1 || !rows.get(i).equals(screen.get(i))) {
+					out.println(rows.get(i));
+					changed = true;
+				}
+			}
+			if (changed || busy) {
+				out.println(rows.get(rows.size() - 1));
+			}
+		} else if (rows.size() == screen.size()) {
+			for (int i = 0; i < rows.size(); i++) {
+				if (!rows.get(i).equals(screen.get(i))) {
+					int up = screen.size() - i;
+					out.print(ESC + up + "A\r" + ESC + "2K" + rows.get(i) + "\r" + ESC + up + "B");
+				}
+			}
+		} else {
+			int first = 0;
+			while (first < rows.size() && first < screen.size() && rows.get(first).equals(screen.get(first))) {
+				first++;
+			}
+			if (screen.size() > first) {
+				out.print(ESC + (screen.size() - first) + "A\r");
+			}
+			out.print(ESC + "J");
+			for (int i = first; i < rows.size(); i++) {
+				out.println(rows.get(i));
+			}
+		}
+		out.flush();
+		screen = rows;
+	}
+
+	private static String pad(String value, int width) {
+		StringBuilder padded = new StringBuilder(value);
+		while (padded.length() < width) {
+			padded.append(' ');
+		}
+		return padded.toString();
+	}
+}
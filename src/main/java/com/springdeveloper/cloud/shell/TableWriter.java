@@ -0,0 +1,88 @@
+package com.springdeveloper.cloud.shell;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes column-aligned rows as they are added. Column widths are taken from the headers and
+ * the first rows; once those are known every further row is written straight away.
+ */
+class TableWriter {
+
+	static final int SAMPLE_ROWS = 50;
+
+	private final PrintStream out;
+
+	private final String[] headers;
+
+	private final List<String[]> sample = new ArrayList<String[]>(SAMPLE_ROWS);
+
+	private int[] widths;
+
+	private int rows;
+
+	TableWriter(PrintStream out, String... headers) {
+		this.out = out;
+		this.headers = headers;
+	}
+
+	void row(Object... values) {
+		String[] cells = new String[values.length];
+		for (int i = 0; i < values.length; i++) {
+			cells[i] = values[i] == null ? "" : values[i].toString();
+		}
+		rows++;
+		if (widths != null) {
+			write(cells);
+			return;
+		}
+		sample.add(cells);
+		if (sample.size() == SAMPLE_ROWS) {
+			flushSample();
+		}
+	}
+
+	/**
+	 * Write any rows still held back and return the number of rows written.
+	 */
+	int finish() {
+		if (widths == null) {
+			flushSample();
+		}
+		out.flush();
+		return rows;
+	}
+
+	private void flushSample() {
+		widths = new int[headers.length];
+		for (int i = 0; i < headers.length; i++) {
+			widths[i] = headers[i].length();
+		}
+		for (String[] cells : sample) {
+			for (int i = 0; i < cells.length && i < widths.length; i++) {
+				widths[i] = Math.max(widths[i], cells[i].length());
+			}
+		}
+		write(headers);
+		for (String[] cells : sample) {
+			write(cells);
+		}
+		sample.clear();
+	}
+
+	private void write(String[] cells) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < cells.length; i++) {
+			line.append(cells[i]);
+			if (i < cells.length - 1) {
+				// a cell wider than the sample still gets a gap before the next column
+				int width = Math.max(i < widths.length ? widths[i] : 0, cells[i].length()) + 2;
+				for (int pad = cells[i].length(); pad < width; pad++) {
+					line.append(' ');
+				}
+			}
+		}
+		out.println(line);
+	}
+}
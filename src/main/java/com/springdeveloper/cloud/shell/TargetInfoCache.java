@@ -0,0 +1,95 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.domain.CloudInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cloud info for each target, kept in memory and on disk so that it is only fetched again
+ * once it is older than the time to live or a refresh is requested.
+ */
+class TargetInfoCache {
+
+	static final long DEFAULT_TTL = 24 * 60 * 60 * 1000L;
+
+	private final HttpTransport transport;
+
+	private final File file;
+
+	private final long ttlMillis;
+
+	private final Map<String, TargetInfo> targets = new ConcurrentHashMap<String, TargetInfo>();
+
+	TargetInfoCache(HttpTransport transport, File file, long ttlMillis) {
+		this.transport = transport;
+		this.file = file;
+		this.ttlMillis = ttlMillis;
+		Properties properties = ShellHome.load(file);
+		for (String name : properties.stringPropertyNames()) {
+			if (name.endsWith(".fetched")) {
+				String target = name.substring(0, name.length() - ".fetched".length());
+				targets.put(target, new TargetInfo(
+						properties.getProperty(target + ".description"),
+						properties.getProperty(target + ".version"),
+						Boolean.parseBoolean(properties.getProperty(target + ".v1")),
+						Long.parseLong(properties.getProperty(name))));
+			}
+		}
+	}
+
+	TargetInfo get(String target, boolean refresh) throws MalformedURLException {
+		TargetInfo info = targets.get(target);
+		if (info == null || refresh || System.currentTimeMillis() - info.fetched > ttlMillis) {
+			CloudInfo cloudInfo = transport.getAnonymousClient(target).getCloudInfo();
+			info = new TargetInfo(cloudInfo.getDescription(), cloudInfo.getVersion(),
+					CloudInfo.CC_MAJOR_VERSION.V1.equals(cloudInfo.getCloudControllerMajorVersion()),
+					System.currentTimeMillis());
+			targets.put(target, info);
+			save();
+		}
+		return info;
+	}
+
+	private synchronized void save() {
+		Properties properties = new Properties();
+		for (Map.Entry<String, TargetInfo> entry : targets.entrySet()) {
+			TargetInfo info = entry.getValue();
+			if (info.description != null) {
+				properties.setProperty(entry.getKey() + ".description", info.description);
+			}
+			if (info.version != null) {
+				properties.setProperty(entry.getKey() + ".version", info.version);
+			}
+			properties.setProperty(entry.getKey() + ".v1", String.valueOf(info.v1));
+			properties.setProperty(entry.getKey() + ".fetched", String.valueOf(info.fetched));
+		}
+		try {
+			ShellHome.store(properties, file, "cloud-shell targets");
+		} catch (IOException e) {
+			// the in-memory copy is still used for this session
+		}
+	}
+
+	static class TargetInfo {
+
+		final String description;
+
+		final String version;
+
+		final boolean v1;
+
+		final long fetched;
+
+		TargetInfo(String description, String version, boolean v1, long fetched) {
+			this.description = description;
+			this.version = version;
+			this.v1 = v1;
+			this.fetched = fetched;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.springdeveloper.cloud.shell;
+
+import org.springframework.util.Assert;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a set of dependent tasks on a bounded worker pool. A task is started once all of
+ * the tasks it depends on have succeeded; if any of them fails the task is skipped. The
+ * workers print to the output of the thread that runs the graph, and the requests they make
+ * are counted with its requests.
+ */
+class TaskGraph {
+
+	enum Status {
+		PENDING, RUNNING, SUCCEEDED, FAILED, SKIPPED
+	}
+
+	private final List<Task> tasks = new ArrayList<Task>();
+
+	private ExecutorService executor;
+
+	private CountDownLatch remaining;
+
+	private AtomicLong callCounter;
+
+	private PrintStream route;
+
+	Task add(String name, Callable<?> work, List<Task> dependencies) {
+		Task task = new Task(name, work);
+		for (Task dependency : dependencies) {
+			Assert.isTrue(tasks.contains(dependency), "Unknown dependency " + dependency.getName());
+			dependency.dependents.add(task);
+			task.pendingDependencies++;
+		}
+		tasks.add(task);
+		return task;
+	}
+
+	Task add(String name, Callable<?> work) {
+		return add(name, work, Collections.<Task>emptyList());
+	}
+
+	List<Task> getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * Run all tasks, blocking until every task has either completed or been skipped.
+	 */
+	void run(int parallelism) throws InterruptedException {
+		Assert.isTrue(parallelism > 0, "Parallelism must be at least 1");
+		executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory());
+		remaining = new CountDownLatch(tasks.size());
+		callCounter = RestLogBuffer.getCallCounter();
+		route = OutputRouter.getRoute();
+		try {
+			synchronized (this) {
+				for (Task task : tasks) {
+					if (task.pendingDependencies == 0) {
+						submit(task);
+					}
+				}
+			}
+			remaining.await();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void submit(final Task task) {
+		task.status = Status.RUNNING;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				Throwable error = null;
+				RestLogBuffer.countCalls(callCounter);
+				OutputRouter.route(route);
+				try {
+					task.work.call();
+				} catch (Throwable t) {
+					error = t;
+				} finally {
+					RestLogBuffer.stopCounting();
+					OutputRouter.clearRoute();
+				}
+				task.elapsed = System.currentTimeMillis() - start;
+				completed(task, error);
+			}
+		});
+	}
+
+	private synchronized void completed(Task task, Throwable error) {
+		if (error == null) {
+			task.status = Status.SUCCEEDED;
+			for (Task dependent : task.dependents) {
+				dependent.pendingDependencies--;
+				if (dependent.pendingDependencies == 0 && dependent.status == Status.PENDING) {
+					submit(dependent);
+				}
+			}
+		} else {
+			task.status = Status.FAILED;
+			task.error = error;
+			for (Task dependent : task.dependents) {
+				skip(dependent, task);
+			}
+		}
+		remaining.countDown();
+	}
+
+	private void skip(Task task, Task cause) {
+		if (task.status != Status.PENDING) {
+			return;
+		}
+		task.status = Status.SKIPPED;
+		task.skippedBecauseOf = cause;
+		remaining.countDown();
+		for (Task dependent : task.dependents) {
+			skip(dependent, cause);
+		}
+	}
+
+	static class Task {
+
+		private final String name;
+
+		private final Callable<?> work;
+
+		private final List<Task> dependents = new ArrayList<Task>();
+
+		private int pendingDependencies;
+
+		private volatile Status status = Status.PENDING;
+
+		private volatile Throwable error;
+
+		private volatile Task skippedBecauseOf;
+
+		private volatile long elapsed;
+
+		Task(String name, Callable<?> work) {
+			this.name = name;
+			this.work = work;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		Status getStatus() {
+			return status;
+		}
+
+		Throwable getError() {
+			return error;
+		}
+
+		Task getSkippedBecauseOf() {
+			return skippedBecauseOf;
+		}
+
+		long getElapsed() {
+			return elapsed;
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "cf-worker-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.springdeveloper.cloud.shell;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded, least-recently-used cache whose entries expire after a fixed time to live.
+ */
+class TtlCache<V> {
+
+	private final int maxSize;
+
+	private volatile long ttlMillis;
+
+	private final LinkedHashMap<String, CachedValue<V>> entries;
+
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	private long expirations;
+
+	TtlCache(final int maxSize, long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, CachedValue<V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedValue<V>> eldest) {
+				if (size() > TtlCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	synchronized V get(String key) {
+		CachedValue<V> entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		if (entry.isExpired(ttlMillis)) {
+			entries.remove(key);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	synchronized void put(String key, V value) {
+		entries.put(key, new CachedValue<V>(value));
+	}
+
+	synchronized void invalidate(String key) {
+		entries.remove(key);
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	synchronized void purgeExpired() {
+		for (Iterator<CachedValue<V>> it = entries.values().iterator(); it.hasNext();) {
+			if (it.next().isExpired(ttlMillis)) {
+				it.remove();
+				expirations++;
+			}
+		}
+	}
+
+	long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	void setTtlMillis(long ttlMillis) {
+		this.ttlMillis = ttlMillis;
+	}
+
+	synchronized String stats() {
+		long requests = hits + misses;
+		return String.format("%d/%d entries, ttl %ds, %d hits, %d misses (%.1f%% hit rate), %d evicted, %d expired",
+				entries.size(), maxSize, ttlMillis / 1000, hits, misses,
+				requests == 0 ? 0.0 : 100.0 * hits / requests, evictions, expirations);
+	}
+
+	private static class CachedValue<V> {
+
+		final V value;
+
+		final long created = System.currentTimeMillis();
+
+		CachedValue(V value) {
+			this.value = value;
+		}
+
+		boolean isExpired(long ttlMillis) {
+			return System.currentTimeMillis() - created > ttlMillis;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EnvChangesTest {
+
+	@Test
+	public void splitsPairsOnCommas() {
+		Map<String, String> env = parse("A=1,B=2");
+		assertEquals(2, env.size());
+		assertEquals("1", env.get("A"));
+		assertEquals("2", env.get("B"));
+	}
+
+	@Test
+	public void keepsAnEscapedCommaInTheValue() {
+		Map<String, String> env = parse("HOSTS=a\\,b\\,c,PORT=80");
+		assertEquals("a,b,c", env.get("HOSTS"));
+		assertEquals("80", env.get("PORT"));
+	}
+
+	@Test
+	public void keepsOtherBackslashesAndEqualsSigns() {
+		Map<String, String> env = parse("PATTERN=\\d+,URL=jdbc:mysql://db?user=app");
+		assertEquals("\\d+", env.get("PATTERN"));
+		assertEquals("jdbc:mysql://db?user=app", env.get("URL"));
+	}
+
+	@Test
+	public void takesQuotesLiterally() {
+		Map<String, String> env = parse("GREETING='hello',NAME=\"app\"");
+		assertEquals("'hello'", env.get("GREETING"));
+		assertEquals("\"app\"", env.get("NAME"));
+	}
+
+	@Test
+	public void trimsPairsAndSkipsEmptyOnes() {
+		Map<String, String> env = parse(" A = 1 ,, B=2,");
+		assertEquals(" 1", env.get("A"));
+		assertEquals("2", env.get("B"));
+		assertEquals(2, env.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAPairWithoutAName() {
+		new EnvChanges().parsePairs("=1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAPairWithoutAnEqualsSign() {
+		new EnvChanges().parsePairs("A=1,B");
+	}
+
+	@Test
+	public void unsetsAVariableWithAnEmptyValue() {
+		Map<String, String> current = new LinkedHashMap<String, String>();
+		current.put("A", "1");
+		current.put("B", "2");
+		EnvChanges changes = new EnvChanges();
+		changes.parsePairs("A=,B=2,C=3");
+		Map<String, String> env = changes.applyTo(current);
+		assertFalse(env.containsKey("A"));
+		assertEquals("3", env.get("C"));
+		assertTrue(changes.hasChanges());
+		assertEquals("+ C\n- A\n", changes.describe());
+	}
+
+	private static Map<String, String> parse(String pairs) {
+		EnvChanges changes = new EnvChanges();
+		changes.parsePairs(pairs);
+		return changes.applyTo(Collections.<String, String>emptyMap());
+	}
+}
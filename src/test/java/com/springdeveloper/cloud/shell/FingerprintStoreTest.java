@@ -0,0 +1,93 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.domain.CloudEntity;
+import org.cloudfoundry.client.lib.domain.CloudOrganization;
+import org.cloudfoundry.client.lib.domain.CloudSpace;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class FingerprintStoreTest {
+
+	private static final String TARGET = "https://api.example.com";
+
+	private static final UUID ORG = UUID.randomUUID();
+
+	private File directory;
+
+	private FingerprintStore store;
+
+	@Before
+	public void createStore() throws IOException {
+		directory = File.createTempFile("fingerprints", "");
+		directory.delete();
+		store = new FingerprintStore(directory);
+	}
+
+	@After
+	public void deleteStore() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void loadsWhatWasSaved() throws IOException {
+		String scope = scope("dev");
+		store.save(scope, "orders", fingerprint("a1", "b2"));
+		Fingerprint loaded = store.load(scope, "orders");
+		assertEquals("a1", loaded.archiveDigest);
+		assertEquals("b2", loaded.entryDigests.get("WEB-INF/web.xml"));
+	}
+
+	@Test
+	public void keepsTheSameAppInASecondSpaceApart() throws IOException {
+		String dev = scope("dev");
+		String staging = scope("staging");
+		assertFalse(dev.equals(staging));
+		store.save(dev, "orders", fingerprint("a1", "b2"));
+		assertNull(store.load(staging, "orders"));
+		store.save(staging, "orders", fingerprint("c3", "d4"));
+		assertEquals("a1", store.load(dev, "orders").archiveDigest);
+		assertEquals("c3", store.load(staging, "orders").archiveDigest);
+	}
+
+	@Test
+	public void forgetsARemovedApp() throws IOException {
+		String scope = scope("dev");
+		store.save(scope, "orders", fingerprint("a1", "b2"));
+		store.remove(scope, "orders");
+		assertNull(store.load(scope, "orders"));
+	}
+
+	@Test
+	public void scopesV1SessionsByTarget() {
+		assertEquals(TARGET, new SessionStore.Session(TARGET, "me@example.com", null, true).getAppScope());
+	}
+
+	private static String scope(String space) {
+		SessionStore.Session session = new SessionStore.Session(TARGET, "me@example.com", null, false);
+		CloudOrganization org = new CloudOrganization(new CloudEntity.Meta(ORG, null, null), "acme");
+		session.setSpace(new CloudSpace(new CloudEntity.Meta(UUID.randomUUID(), null, null), space, org));
+		return session.getAppScope();
+	}
+
+	private static Fingerprint fingerprint(String archiveDigest, String entryDigest) {
+		TreeMap<String, String> entryDigests = new TreeMap<String, String>();
+		entryDigests.put("WEB-INF/web.xml", entryDigest);
+		return new Fingerprint(archiveDigest, entryDigests);
+	}
+}
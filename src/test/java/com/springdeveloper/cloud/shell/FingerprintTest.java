@@ -0,0 +1,74 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FingerprintTest {
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("fingerprint", ".txt");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test
+	public void rereadsAFileRewrittenWithinTheTimestampGranularity() throws IOException {
+		long now = System.currentTimeMillis() / 1000 * 1000;
+		write("version 1", now);
+		String first = Fingerprint.digest(file);
+		write("version 2", now);
+		assertFalse(first.equals(Fingerprint.digest(file)));
+	}
+
+	@Test
+	public void remembersTheDigestOfAFileThatHasSettled() throws IOException {
+		long earlier = System.currentTimeMillis() / 1000 * 1000 - 60000;
+		write("version 1", earlier);
+		String first = Fingerprint.digest(file);
+		write("version 2", earlier);
+		assertEquals(first, Fingerprint.digest(file));
+		write("version 22", earlier);
+		assertFalse(first.equals(Fingerprint.digest(file)));
+	}
+
+	@Test
+	public void countsAddedAndModifiedEntries() {
+		Fingerprint previous = new Fingerprint("a", entries("index.html", "1", "app.js", "2"));
+		Fingerprint current = new Fingerprint("b", entries("index.html", "1", "app.js", "3", "app.css", "4"));
+		assertEquals(2, current.countChangedEntries(previous));
+		assertEquals(0, previous.countChangedEntries(previous));
+	}
+
+	private void write(String content, long lastModified) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		file.setLastModified(lastModified);
+	}
+
+	private static TreeMap<String, String> entries(String... namesAndDigests) {
+		TreeMap<String, String> entries = new TreeMap<String, String>();
+		for (int i = 0; i < namesAndDigests.length; i += 2) {
+			entries.put(namesAndDigests[i], namesAndDigests[i + 1]);
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,51 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GlobTest {
+
+	@Test
+	public void matchesTheWholeName() {
+		Pattern pattern = Glob.compile("web-*");
+		assertTrue(pattern.matcher("web-").matches());
+		assertTrue(pattern.matcher("web-1").matches());
+		assertFalse(pattern.matcher("my-web-1").matches());
+		assertFalse(pattern.matcher("web").matches());
+	}
+
+	@Test
+	public void anchorsBothEnds() {
+		Pattern pattern = Glob.compile("*-worker");
+		assertTrue(pattern.matcher("billing-worker").matches());
+		assertFalse(pattern.matcher("billing-worker-2").matches());
+		assertFalse(Glob.compile("api").matcher("api-v2").matches());
+		assertFalse(Glob.compile("api").matcher("old-api").matches());
+	}
+
+	@Test
+	public void matchesASingleCharacterForAQuestionMark() {
+		Pattern pattern = Glob.compile("app-?");
+		assertTrue(pattern.matcher("app-1").matches());
+		assertFalse(pattern.matcher("app-").matches());
+		assertFalse(pattern.matcher("app-10").matches());
+	}
+
+	@Test
+	public void takesRegexCharactersLiterally() {
+		assertTrue(Glob.compile("a.b+c").matcher("a.b+c").matches());
+		assertFalse(Glob.compile("a.b+c").matcher("axbbc").matches());
+		assertTrue(Glob.compile("[x]*").matcher("[x]-1").matches());
+	}
+
+	@Test
+	public void tellsPatternsFromNames() {
+		assertTrue(Glob.isPattern("web-*"));
+		assertTrue(Glob.isPattern("app-?"));
+		assertFalse(Glob.isPattern("web-1"));
+	}
+}
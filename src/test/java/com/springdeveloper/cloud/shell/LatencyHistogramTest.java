@@ -0,0 +1,78 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void countsSmallValuesExactly() {
+		for (long value = 0; value < 64; value++) {
+			assertEquals(value, medianWithLargerValue(value));
+		}
+	}
+
+	@Test
+	public void reportsTheTopOfTheBucketAboveTheExactRange() {
+		// from 64 on the buckets are 2 wide, then 4 wide from 128, and so on
+		assertEquals(65, medianWithLargerValue(64));
+		assertEquals(65, medianWithLargerValue(65));
+		assertEquals(67, medianWithLargerValue(66));
+		assertEquals(127, medianWithLargerValue(126));
+		assertEquals(127, medianWithLargerValue(127));
+		assertEquals(131, medianWithLargerValue(128));
+		assertEquals(131, medianWithLargerValue(131));
+		assertEquals(135, medianWithLargerValue(132));
+	}
+
+	@Test
+	public void staysWithinThreePercentOfLargeValues() {
+		for (long value = 64; value < 1L << 40; value = value * 3 / 2 + 7) {
+			long reported = medianWithLargerValue(value);
+			assertTrue(value + " reported as " + reported, reported >= value && reported <= value * 1.032);
+		}
+	}
+
+	@Test
+	public void neverReportsMoreThanTheMaximum() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		assertEquals(1000, histogram.getPercentile(50));
+		assertEquals(1000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void ranksValuesByPercentile() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1; value <= 50; value++) {
+			histogram.record(value);
+		}
+		assertEquals(25, histogram.getPercentile(50));
+		assertEquals(48, histogram.getPercentile(95));
+		assertEquals(50, histogram.getPercentile(100));
+		assertEquals(1, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void countsNegativeValuesAsZeroAndStartsEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99));
+		histogram.record(-5);
+		assertEquals(0, histogram.getPercentile(100));
+		assertEquals(1, histogram.getCount());
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+	}
+
+	/**
+	 * The median of the value and a much larger one, which is the top of the value's bucket.
+	 */
+	private static long medianWithLargerValue(long value) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(value);
+		histogram.record(Long.MAX_VALUE / 2);
+		return histogram.getPercentile(50);
+	}
+}
@@ -0,0 +1,121 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LogFollowerTest {
+
+	@Test
+	public void parsesTheFileListing() {
+		Map<String, Long> files = LogFollower.parseListing("logs/",
+				"staging.log                              1.2K\nstdout.log   0B\nold/     -\nstderr.log 2M\n");
+		assertEquals(3, files.size());
+		assertEquals(Long.valueOf(1228), files.get("logs/staging.log"));
+		assertEquals(Long.valueOf(0), files.get("logs/stdout.log"));
+		assertEquals(Long.valueOf(2 * 1024 * 1024), files.get("logs/stderr.log"));
+	}
+
+	@Test
+	public void tellsWhichCharsetTheClientDecodedWith() throws Exception {
+		byte[] utf8 = "caf\u00e9\n".getBytes("UTF-8");
+		assertEquals(LogFollower.UTF_8, LogFollower.decodedWith(new String(utf8, "UTF-8")));
+		assertEquals(LogFollower.ISO_8859_1, LogFollower.decodedWith(new String(utf8, "ISO-8859-1")));
+		assertEquals(LogFollower.UTF_8, LogFollower.decodedWith("\u65e5\u672c"));
+		assertNull(LogFollower.decodedWith("plain ascii\n"));
+	}
+
+	@Test
+	public void ignoresACharacterCutOffAtEitherEnd() throws Exception {
+		byte[] utf8 = "\u00e9t\u00e9 \u00e9".getBytes("UTF-8");
+		String cut = new String(Arrays.copyOfRange(utf8, 1, utf8.length - 1), "ISO-8859-1");
+		assertEquals(LogFollower.ISO_8859_1, LogFollower.decodedWith(cut));
+	}
+
+	@Test
+	public void receivesTheBytesTheControllerSent() throws Exception {
+		byte[] utf8 = "\u00e9\n".getBytes("UTF-8");
+		assertEquals(3, LogFollower.receivedBytes(new String(utf8, "UTF-8"), LogFollower.UTF_8).length);
+		assertEquals(3, LogFollower.receivedBytes(new String(utf8, "ISO-8859-1"), LogFollower.ISO_8859_1).length);
+	}
+
+	@Test
+	public void keepsOffsetsInStepWhenTheResponseDeclaresUtf8() throws Exception {
+		assertFollows(LogFollower.UTF_8);
+	}
+
+	@Test
+	public void keepsOffsetsInStepWhenTheResponseDeclaresNoCharset() throws Exception {
+		assertFollows(LogFollower.ISO_8859_1);
+	}
+
+	private void assertFollows(Charset decodedWith) throws Exception {
+		RemoteLog remote = new RemoteLog(decodedWith);
+		remote.append("caf\u00e9 1\n");
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		new LogFollower(remote.client(), "app", 0, "stdout.log", new PrintStream(printed, true, "UTF-8"))
+				.follow(1500, null);
+		assertEquals("caf\u00e9 1\ncaf\u00e9 2\n", printed.toString("UTF-8").replace("\r", ""));
+	}
+
+	/**
+	 * A log file on an instance, which gets a second line once the first has been fetched.
+	 */
+	private static class RemoteLog {
+
+		private final Charset decodedWith;
+
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+		private int fetches;
+
+		RemoteLog(Charset decodedWith) {
+			this.decodedWith = decodedWith;
+		}
+
+		void append(String text) throws Exception {
+			content.write(text.getBytes("UTF-8"));
+		}
+
+		CloudFoundryOperations client() {
+			return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+					new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+							if (!method.getName().equals("getFile")) {
+								throw new UnsupportedOperationException(method.getName());
+							}
+							if (args.length == 3) {
+								return "stdout.log   0B\n";
+							}
+							return fetch((Integer) args[3]);
+						}
+					});
+		}
+
+		private String fetch(int start) throws Exception {
+			byte[] bytes = content.toByteArray();
+			if (start > bytes.length) {
+				throw new CloudFoundryException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+			}
+			String fetched = new String(bytes, start, bytes.length - start, decodedWith);
+			if (fetches++ == 0) {
+				append("caf\u00e9 2\n");
+			}
+			return fetched;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.InstancesInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogStoreTest {
+
+	private static final String DEV = "https://api.example.com|org/dev";
+
+	private static final String STAGING = "https://api.example.com|org/staging";
+
+	private File directory;
+
+	private LogStore store;
+
+	private final StringBuilder stdout = new StringBuilder();
+
+	private final AtomicInteger refreshing = new AtomicInteger();
+
+	private final AtomicInteger mostRefreshing = new AtomicInteger();
+
+	@Before
+	public void createStore() throws IOException {
+		directory = File.createTempFile("logs", "");
+		directory.delete();
+		store = new LogStore(directory);
+	}
+
+	@After
+	public void deleteStore() {
+		delete(directory);
+	}
+
+	@Test
+	public void fetchesOnlyWhatWasAdded() throws IOException {
+		stdout.append("2026-10-01 10:00:01 started\n");
+		assertEquals(28, store.refresh(client(0), DEV, "orders"));
+		stdout.append("2026-10-01 10:00:02 ready\n");
+		assertEquals(26, store.refresh(client(0), DEV, "orders"));
+		assertEquals(0, store.refresh(client(0), DEV, "orders"));
+		List<LogStore.Line> lines = query(DEV, null, 0, null);
+		assertEquals(2, lines.size());
+		assertEquals("2026-10-01 10:00:02 ready", lines.get(1).text);
+		assertEquals("orders/0/logs/stdout.log", lines.get(1).source);
+	}
+
+	@Test
+	public void answersQueriesFromTheStoredLines() throws Exception {
+		stdout.append("2026-10-01 10:00:01 started\n2026-10-01 10:00:02 error: no db\n2026-10-01 10:00:03 ready\n");
+		store.refresh(client(0), DEV, "orders");
+		assertEquals(1, query(DEV, Pattern.compile("error"), 0, null).size());
+		assertEquals("2026-10-01 10:00:03 ready", query(DEV, null, 0, 1).get(0).text);
+		long since = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2026-10-01 10:00:02").getTime();
+		assertEquals(2, query(DEV, null, since, null).size());
+	}
+
+	@Test
+	public void keepsTheSameAppInASecondSpaceApart() throws IOException {
+		stdout.append("2026-10-01 10:00:01 started\n");
+		store.refresh(client(0), DEV, "orders");
+		assertTrue(query(STAGING, null, 0, null).isEmpty());
+		store.refresh(client(0), STAGING, "orders");
+		assertEquals(1, query(STAGING, null, 0, null).size());
+		assertEquals(1, query(DEV, null, 0, null).size());
+	}
+
+	@Test
+	public void refreshesAnAppOneAtATime() throws Exception {
+		stdout.append("2026-10-01 10:00:01 started\n");
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						store.refresh(client(20), DEV, "orders");
+					} catch (Throwable t) {
+						errors.add(t);
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(Collections.<Throwable>emptyList(), errors);
+		assertEquals(1, mostRefreshing.get());
+		assertEquals(1, query(DEV, null, 0, null).size());
+	}
+
+	private List<LogStore.Line> query(String scope, Pattern grep, long since, Integer tail) throws IOException {
+		return store.query(scope, Arrays.asList("orders"), grep, since, tail);
+	}
+
+	/**
+	 * A client for an app with one instance, whose stdout log holds what was appended to it.
+	 */
+	private CloudFoundryOperations client(final long delay) {
+		return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+						if (method.getName().equals("getApplicationInstances")) {
+							mostRefreshing.set(Math.max(mostRefreshing.get(), refreshing.incrementAndGet()));
+							Thread.sleep(delay);
+							refreshing.decrementAndGet();
+							Map<String, Object> instance = new HashMap<String, Object>();
+							instance.put("index", 0);
+							return new InstancesInfo(Collections.singletonList(instance));
+						}
+						if (method.getName().equals("getFile") && args.length == 3) {
+							return args[2].equals("logs/") ? "stdout.log   " + stdout.length() + "B\n" : stdout.toString();
+						}
+						if (method.getName().equals("getFile")) {
+							int start = (Integer) args[3];
+							if (start > stdout.length()) {
+								throw new CloudFoundryException(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+							}
+							return stdout.substring(start);
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,109 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.cloudfoundry.client.lib.domain.CloudService;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ManifestPlanTest {
+
+	private static final ManifestPlan.ChangeCheck UNCHANGED = new ManifestPlan.ChangeCheck() {
+		@Override
+		public boolean isChanged(Manifest.AppEntry appEntry) {
+			return false;
+		}
+	};
+
+	private final Manifest manifest = Manifest.parse(manifestMap(), new File("."));
+
+	@Test
+	public void createsOnlyWhatIsMissing() throws Exception {
+		ManifestPlan plan = ManifestPlan.forPush(manifest, Arrays.asList(app("web")),
+				Arrays.asList(service("db")), UNCHANGED);
+		assertEquals(ManifestPlan.Action.SKIP, plan.getServiceAction("db"));
+		assertEquals(ManifestPlan.Action.CREATE, plan.getServiceAction("cache"));
+		assertEquals(ManifestPlan.Action.SKIP, plan.getAppAction("web"));
+		assertEquals(ManifestPlan.Action.CREATE, plan.getAppAction("worker"));
+	}
+
+	@Test
+	public void updatesExistingAppsOnlyWhenTheirBitsChanged() throws Exception {
+		ManifestPlan plan = ManifestPlan.forPush(manifest, Arrays.asList(app("web"), app("worker")),
+				Collections.<CloudService>emptyList(), new ManifestPlan.ChangeCheck() {
+					@Override
+					public boolean isChanged(Manifest.AppEntry appEntry) {
+						return appEntry.name.equals("worker");
+					}
+				});
+		assertEquals(ManifestPlan.Action.SKIP, plan.getAppAction("web"));
+		assertEquals(ManifestPlan.Action.UPDATE, plan.getAppAction("worker"));
+	}
+
+	@Test
+	public void deletesOnlyWhatExists() {
+		ManifestPlan plan = ManifestPlan.forDelete(manifest, Arrays.asList(app("worker")),
+				Arrays.asList(service("cache")), true);
+		assertEquals(ManifestPlan.Action.SKIP, plan.getAppAction("web"));
+		assertEquals(ManifestPlan.Action.DELETE, plan.getAppAction("worker"));
+		assertEquals(ManifestPlan.Action.SKIP, plan.getServiceAction("db"));
+		assertEquals(ManifestPlan.Action.DELETE, plan.getServiceAction("cache"));
+	}
+
+	@Test
+	public void leavesServicesAloneUnlessAskedToDeleteThem() {
+		ManifestPlan plan = ManifestPlan.forDelete(manifest, Collections.<CloudApplication>emptyList(),
+				Arrays.asList(service("db")), false);
+		assertEquals(ManifestPlan.Action.SKIP, plan.getServiceAction("db"));
+	}
+
+	@Test
+	public void describesServicesBeforeApps() throws Exception {
+		ManifestPlan plan = ManifestPlan.forPush(manifest, Arrays.asList(app("web")),
+				Arrays.asList(service("db")), UNCHANGED);
+		assertEquals("SKIP service db\nCREATE service cache\nSKIP app web\nCREATE app worker\n", plan.describe());
+	}
+
+	private static Map<String, Object> manifestMap() {
+		List<Map<String, Object>> services = new ArrayList<Map<String, Object>>();
+		services.add(entry("db"));
+		services.add(entry("cache"));
+		List<Map<String, Object>> apps = new ArrayList<Map<String, Object>>();
+		apps.add(appEntry("web"));
+		apps.add(appEntry("worker"));
+		Map<String, Object> manifest = new HashMap<String, Object>();
+		manifest.put("services", services);
+		manifest.put("applications", apps);
+		return manifest;
+	}
+
+	private static Map<String, Object> entry(String name) {
+		Map<String, Object> entry = new HashMap<String, Object>();
+		entry.put("name", name);
+		return entry;
+	}
+
+	private static Map<String, Object> appEntry(String name) {
+		Map<String, Object> entry = entry(name);
+		entry.put("memory", "512M");
+		entry.put("path", name + ".war");
+		return entry;
+	}
+
+	private static CloudApplication app(String name) {
+		return new CloudApplication(name, "java", "spring", 512, 1, Collections.<String>emptyList(),
+				Collections.<String>emptyList(), CloudApplication.AppState.STARTED);
+	}
+
+	private static CloudService service(String name) {
+		return new CloudService(CloudService.Meta.defaultMeta(), name);
+	}
+}
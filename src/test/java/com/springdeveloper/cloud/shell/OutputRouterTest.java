@@ -0,0 +1,67 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutputRouterTest {
+
+	private final ByteArrayOutputStream fallback = new ByteArrayOutputStream();
+
+	private final OutputRouter router = new OutputRouter(new PrintStream(fallback, true));
+
+	@After
+	public void clearRoute() {
+		OutputRouter.clearRoute();
+	}
+
+	@Test
+	public void writesToTheRouteOfTheCurrentThread() {
+		ByteArrayOutputStream routed = new ByteArrayOutputStream();
+		OutputRouter.route(routed);
+		router.println("routed");
+		router.printf("%d apps%n", 3);
+		OutputRouter.clearRoute();
+		router.print("unrouted");
+		assertEquals("routed\n3 apps\n", routed.toString().replace("\r", ""));
+		assertEquals("unrouted", fallback.toString());
+	}
+
+	@Test
+	public void doesNotPassTheRouteToThreadsItStarts() throws InterruptedException {
+		ByteArrayOutputStream routed = new ByteArrayOutputStream();
+		OutputRouter.route(routed);
+		Thread other = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				router.print("other");
+			}
+		});
+		other.start();
+		other.join();
+		assertEquals("", routed.toString());
+		assertEquals("other", fallback.toString());
+	}
+
+	@Test
+	public void passesTheRouteToTaskGraphWorkers() throws InterruptedException {
+		ByteArrayOutputStream routed = new ByteArrayOutputStream();
+		OutputRouter.route(routed);
+		TaskGraph graph = new TaskGraph();
+		graph.add("print", new Callable<Object>() {
+			@Override
+			public Object call() {
+				router.print("worker");
+				return null;
+			}
+		});
+		graph.run(1);
+		assertEquals("worker", routed.toString());
+		assertEquals("", fallback.toString());
+	}
+}
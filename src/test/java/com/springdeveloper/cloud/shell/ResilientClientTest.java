@@ -0,0 +1,153 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.LinkedList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilientClientTest {
+
+	private final LinkedList<HttpStatus> failures = new LinkedList<HttpStatus>();
+
+	private int calls;
+
+	private ResilientClient.Policy policy;
+
+	private CloudFoundryOperations client;
+
+	@Before
+	public void createClient() {
+		policy = new ResilientClient.Policy("https://api.example.com");
+		policy.baseDelay = 1;
+		client = ResilientClient.wrap(fakeClient(), policy);
+	}
+
+	@Test
+	public void retriesReadsAfterServerErrors() {
+		failures.add(HttpStatus.SERVICE_UNAVAILABLE);
+		failures.add(HttpStatus.BAD_GATEWAY);
+		assertTrue(client.getApplications().isEmpty());
+		assertEquals(3, calls);
+		assertEquals(2, policy.retried.get());
+		assertEquals(2, policy.failures.get());
+	}
+
+	@Test
+	public void givesUpAfterTheLastRetry() {
+		for (int i = 0; i <= policy.retries; i++) {
+			failures.add(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		assertFails(HttpStatus.SERVICE_UNAVAILABLE);
+		assertEquals(policy.retries + 1, calls);
+	}
+
+	@Test
+	public void doesNotRetryOtherCallsAfterServerErrors() {
+		failures.add(HttpStatus.INTERNAL_SERVER_ERROR);
+		try {
+			client.deleteApplication("orders");
+			fail();
+		} catch (CloudFoundryException e) {
+			assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatusCode());
+		}
+		assertEquals(1, calls);
+	}
+
+	@Test
+	public void retriesOtherCallsTurnedAwayWithTooManyRequests() {
+		failures.add(HttpStatus.TOO_MANY_REQUESTS);
+		client.deleteApplication("orders");
+		assertEquals(2, calls);
+	}
+
+	@Test
+	public void neitherRetriesNorCountsClientErrors() {
+		failures.add(HttpStatus.NOT_FOUND);
+		assertFails(HttpStatus.NOT_FOUND);
+		assertEquals(1, calls);
+		assertEquals(0, policy.failures.get());
+	}
+
+	@Test
+	public void opensTheBreakerAfterFailuresInARow() {
+		policy.retries = 0;
+		policy.breakerThreshold = 2;
+		failures.add(HttpStatus.SERVICE_UNAVAILABLE);
+		failures.add(HttpStatus.SERVICE_UNAVAILABLE);
+		assertFails(HttpStatus.SERVICE_UNAVAILABLE);
+		assertFalse(policy.isOpen());
+		assertFails(HttpStatus.SERVICE_UNAVAILABLE);
+		assertTrue(policy.isOpen());
+		try {
+			client.getApplications();
+			fail();
+		} catch (ResilientClient.CircuitOpenException e) {
+			// expected
+		}
+		assertEquals(2, calls);
+		assertEquals(1, policy.rejected.get());
+	}
+
+	@Test
+	public void closesTheBreakerWhenAProbeSucceeds() throws InterruptedException {
+		policy.retries = 0;
+		policy.breakerThreshold = 1;
+		policy.breakerCoolDown = 20;
+		failures.add(HttpStatus.SERVICE_UNAVAILABLE);
+		assertFails(HttpStatus.SERVICE_UNAVAILABLE);
+		assertTrue(policy.isOpen());
+		Thread.sleep(40);
+		client.getApplications();
+		assertFalse(policy.isOpen());
+		assertEquals(2, calls);
+	}
+
+	@Test
+	public void reopensTheBreakerWhenAProbeFails() throws InterruptedException {
+		policy.retries = 0;
+		policy.breakerThreshold = 1;
+		policy.breakerCoolDown = 20;
+		failures.add(HttpStatus.SERVICE_UNAVAILABLE);
+		failures.add(HttpStatus.SERVICE_UNAVAILABLE);
+		assertFails(HttpStatus.SERVICE_UNAVAILABLE);
+		Thread.sleep(40);
+		assertFails(HttpStatus.SERVICE_UNAVAILABLE);
+		assertTrue(policy.isOpen());
+		assertEquals(2, policy.breakerOpened.get());
+	}
+
+	private void assertFails(HttpStatus status) {
+		try {
+			client.getApplications();
+			fail();
+		} catch (CloudFoundryException e) {
+			assertEquals(status, e.getStatusCode());
+		}
+	}
+
+	private CloudFoundryOperations fakeClient() {
+		return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						calls++;
+						if (!failures.isEmpty()) {
+							throw new CloudFoundryException(failures.removeFirst());
+						}
+						return method.getName().equals("getApplications") ? Collections.emptyList() : null;
+					}
+				});
+	}
+}
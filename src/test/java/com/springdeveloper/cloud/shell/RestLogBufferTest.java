@@ -0,0 +1,130 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.RestLogEntry;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RestLogBufferTest {
+
+	@Test
+	public void overwritesTheOldestEntriesOnceFull() {
+		RestLogBuffer buffer = new RestLogBuffer(3);
+		for (int i = 0; i < 5; i++) {
+			buffer.add(entry("GET", "/apps/app-" + i, HttpStatus.OK));
+		}
+		List<RestLogBuffer.Record> records = buffer.snapshot();
+		assertEquals(3, records.size());
+		assertEquals("/apps/app-2", records.get(0).entry.getUri().getPath());
+		assertEquals("/apps/app-4", records.get(2).entry.getUri().getPath());
+		assertEquals(5, buffer.getTotal());
+	}
+
+	@Test
+	public void keepsCountingAfterAClear() {
+		RestLogBuffer buffer = new RestLogBuffer(10);
+		buffer.add(entry("GET", "/apps", HttpStatus.OK));
+		buffer.clear();
+		assertTrue(buffer.snapshot().isEmpty());
+		buffer.add(entry("GET", "/services", HttpStatus.OK));
+		assertEquals(1, buffer.snapshot().size());
+		assertEquals(2, buffer.getTotal());
+	}
+
+	@Test
+	public void groupsEndpointsByCollectionAndId() {
+		assertEquals("/apps/{id}/instances", RestLogBuffer.endpoint(entry("GET", "/apps/orders/instances", HttpStatus.OK)));
+		assertEquals("/v2/spaces/{id}/apps", RestLogBuffer.endpoint(
+				entry("GET", "/v2/spaces/0f3c4b1e-9a6d-4c1b-8d7e-2f5a6b7c8d9e/apps", HttpStatus.OK)));
+		assertEquals("/info", RestLogBuffer.endpoint(entry("GET", "/info", HttpStatus.OK)));
+	}
+
+	@Test
+	public void countsErrorsPerEndpoint() {
+		RestLogBuffer buffer = new RestLogBuffer(10);
+		buffer.add(entry("GET", "/apps/a", HttpStatus.OK));
+		buffer.add(entry("GET", "/apps/b", HttpStatus.NOT_FOUND));
+		buffer.add(entry("PUT", "/apps/a", HttpStatus.OK));
+		String stats = buffer.stats();
+		assertTrue(stats, stats.matches("(?s).*GET /apps/\\{id\\}\\s+2\\s+1\\s+50\\.0%.*"));
+		assertTrue(stats, stats.matches("(?s).*PUT /apps/\\{id\\}\\s+1\\s+0\\s+0\\.0%.*"));
+	}
+
+	@Test
+	public void timesEntriesFromTheStartOfEachCall() throws InterruptedException {
+		RestLogBuffer buffer = new RestLogBuffer(10);
+		CloudFoundryOperations client = RestLogBuffer.timed(reportingClient(buffer));
+		Thread.sleep(50);
+		client.getApplications();
+		RestLogBuffer.Record record = buffer.snapshot().get(0);
+		assertTrue(record.latencyNanos >= 0);
+		assertTrue(record.latencyNanos < 50000000L);
+	}
+
+	@Test
+	public void countsTheRequestsOfTaskGraphWorkersWithTheirCaller() throws Exception {
+		final RestLogBuffer buffer = new RestLogBuffer(10);
+		AtomicLong counter = RestLogBuffer.countCalls();
+		try {
+			TaskGraph graph = new TaskGraph();
+			for (int i = 0; i < 3; i++) {
+				graph.add("task-" + i, new Callable<Object>() {
+					@Override
+					public Object call() {
+						buffer.add(entry("GET", "/apps", HttpStatus.OK));
+						return null;
+					}
+				});
+			}
+			graph.run(2);
+			assertEquals(3, counter.get());
+		} finally {
+			RestLogBuffer.stopCounting();
+		}
+	}
+
+	@Test
+	public void doesNotCountTheRequestsOfOtherThreads() throws Exception {
+		final RestLogBuffer buffer = new RestLogBuffer(10);
+		AtomicLong counter = RestLogBuffer.countCalls();
+		try {
+			Thread other = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					buffer.add(entry("GET", "/apps", HttpStatus.OK));
+				}
+			});
+			other.start();
+			other.join();
+			assertEquals(0, counter.get());
+		} finally {
+			RestLogBuffer.stopCounting();
+		}
+	}
+
+	private static CloudFoundryOperations reportingClient(final RestLogBuffer buffer) {
+		return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						buffer.add(entry("GET", "/" + method.getName(), HttpStatus.OK));
+						return null;
+					}
+				});
+	}
+
+	static RestLogEntry entry(String method, String path, HttpStatus status) {
+		return new RestLogEntry(URI.create("http://api.example.com" + path), method, status, status.name(), null);
+	}
+}
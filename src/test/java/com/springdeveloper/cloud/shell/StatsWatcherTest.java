@@ -0,0 +1,88 @@
+package com.springdeveloper.cloud.shell;
+
+import org.cloudfoundry.client.lib.CloudFoundryException;
+import org.cloudfoundry.client.lib.CloudFoundryOperations;
+import org.cloudfoundry.client.lib.domain.CloudApplication;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class StatsWatcherTest {
+
+	private final List<CloudApplication> apps = new ArrayList<CloudApplication>();
+
+	private final List<String> calls = new ArrayList<String>();
+
+	@Test
+	public void listsTheAppsOncePerRefresh() {
+		apps.add(app("orders", 2));
+		apps.add(app("billing", 2));
+		apps.add(app("reports", 1));
+		StatsWatcher watcher = watcher("orders", "bill*");
+		watcher.refresh();
+		watcher.refresh();
+		assertEquals(Arrays.asList("getApplications", "getApplicationInstances orders",
+				"getApplicationInstances billing", "getApplications"), calls);
+	}
+
+	@Test
+	public void fetchesInstancesOnlyForAppsThatChanged() {
+		apps.add(app("orders", 1));
+		apps.add(app("billing", 2));
+		StatsWatcher watcher = watcher("orders", "billing");
+		watcher.refresh();
+		calls.clear();
+		apps.get(1).setRunningInstances(1);
+		List<String> rows = watcher.refresh();
+		assertEquals(Arrays.asList("getApplications", "getApplicationInstances billing"), calls);
+		assertEquals("billing  STARTED   1/2 running  512M", rows.get(1));
+	}
+
+	@Test
+	public void saysSoWhenNothingMatches() {
+		apps.add(app("orders", 1));
+		assertEquals(Arrays.asList("No matching apps."), watcher("billing").refresh());
+	}
+
+	private StatsWatcher watcher(String... watched) {
+		return new StatsWatcher(client(), Arrays.asList(watched),
+				new PrintStream(new ByteArrayOutputStream()), false);
+	}
+
+	private CloudFoundryOperations client() {
+		return (CloudFoundryOperations) Proxy.newProxyInstance(CloudFoundryOperations.class.getClassLoader(),
+				new Class<?>[] { CloudFoundryOperations.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("getApplications")) {
+							calls.add(method.getName());
+							return apps;
+						}
+						if (method.getName().equals("getApplicationInstances")) {
+							calls.add(method.getName() + " " + args[0]);
+							// as the controller answers while an app is staging
+							throw new CloudFoundryException(HttpStatus.BAD_REQUEST);
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private static CloudApplication app(String name, int running) {
+		CloudApplication app = new CloudApplication(name, "java", "spring", 512, 2, Collections.<String>emptyList(),
+				Collections.<String>emptyList(), CloudApplication.AppState.STARTED);
+		app.setRunningInstances(running);
+		return app;
+	}
+}
@@ -0,0 +1,56 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class TableWriterTest {
+
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	private final TableWriter table = new TableWriter(new PrintStream(output, true), "NAME", "STATE", "URIS");
+
+	@Test
+	public void alignsColumnsToTheWidestOfHeaderAndRows() {
+		table.row("orders", "STARTED", "orders.example.com");
+		table.row("a", null, "");
+		assertEquals(2, table.finish());
+		assertEquals("NAME    STATE    URIS\n" +
+				"orders  STARTED  orders.example.com\n" +
+				"a                \n", written());
+	}
+
+	@Test
+	public void writesRowsAfterTheSampleStraightAway() {
+		for (int i = 0; i < TableWriter.SAMPLE_ROWS; i++) {
+			table.row("app", "STOPPED", "");
+		}
+		int before = written().length();
+		table.row("late", "STARTED", "");
+		assertEquals("late  STARTED  \n", written().substring(before));
+		assertEquals(TableWriter.SAMPLE_ROWS + 1, table.finish());
+	}
+
+	@Test
+	public void keepsALaterWiderCellApartFromTheNextColumn() {
+		for (int i = 0; i < TableWriter.SAMPLE_ROWS; i++) {
+			table.row("app", "STOPPED", "");
+		}
+		int before = written().length();
+		table.row("a-much-longer-name", "STARTED", "");
+		assertEquals("a-much-longer-name  STARTED  \n", written().substring(before));
+	}
+
+	@Test
+	public void writesOnlyTheHeaderForNoRows() {
+		assertEquals(0, table.finish());
+		assertEquals("NAME  STATE  URIS\n", written());
+	}
+
+	private String written() {
+		return output.toString().replace(System.getProperty("line.separator"), "\n");
+	}
+}
@@ -0,0 +1,69 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskGraphTest {
+
+	private static final Callable<Object> SUCCEED = new Callable<Object>() {
+		@Override
+		public Object call() {
+			return null;
+		}
+	};
+
+	private static final Callable<Object> FAIL = new Callable<Object>() {
+		@Override
+		public Object call() throws IOException {
+			throw new IOException("failed");
+		}
+	};
+
+	@Test
+	public void skipsEverythingDownstreamOfAFailure() throws InterruptedException {
+		TaskGraph graph = new TaskGraph();
+		TaskGraph.Task service = graph.add("service", FAIL);
+		TaskGraph.Task app = graph.add("app", SUCCEED, Arrays.asList(service));
+		TaskGraph.Task route = graph.add("route", SUCCEED, Arrays.asList(app));
+		TaskGraph.Task other = graph.add("other", SUCCEED);
+		graph.run(2);
+		assertEquals(TaskGraph.Status.FAILED, service.getStatus());
+		assertTrue(service.getError() instanceof IOException);
+		assertEquals(TaskGraph.Status.SKIPPED, app.getStatus());
+		assertSame(service, app.getSkippedBecauseOf());
+		assertEquals(TaskGraph.Status.SKIPPED, route.getStatus());
+		assertSame(service, route.getSkippedBecauseOf());
+		assertEquals(TaskGraph.Status.SUCCEEDED, other.getStatus());
+		assertNull(other.getSkippedBecauseOf());
+	}
+
+	@Test
+	public void skipsATaskWhenAnyOfItsDependenciesFails() throws InterruptedException {
+		TaskGraph graph = new TaskGraph();
+		TaskGraph.Task failed = graph.add("failed", FAIL);
+		TaskGraph.Task succeeded = graph.add("succeeded", SUCCEED);
+		TaskGraph.Task both = graph.add("both", SUCCEED, Arrays.asList(failed, succeeded));
+		graph.run(1);
+		assertEquals(TaskGraph.Status.SUCCEEDED, succeeded.getStatus());
+		assertEquals(TaskGraph.Status.SKIPPED, both.getStatus());
+		assertSame(failed, both.getSkippedBecauseOf());
+	}
+
+	@Test
+	public void runsATaskOnceAllItsDependenciesSucceeded() throws InterruptedException {
+		TaskGraph graph = new TaskGraph();
+		TaskGraph.Task first = graph.add("first", SUCCEED);
+		TaskGraph.Task second = graph.add("second", SUCCEED);
+		TaskGraph.Task both = graph.add("both", SUCCEED, Arrays.asList(first, second));
+		graph.run(4);
+		assertEquals(TaskGraph.Status.SUCCEEDED, both.getStatus());
+	}
+}
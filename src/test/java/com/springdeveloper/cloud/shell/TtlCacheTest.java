@@ -0,0 +1,62 @@
+package com.springdeveloper.cloud.shell;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TtlCacheTest {
+
+	@Test
+	public void returnsAnEntryWithinItsTimeToLive() {
+		TtlCache<String> cache = new TtlCache<String>(10, 60000);
+		cache.put("a", "1");
+		assertEquals("1", cache.get("a"));
+	}
+
+	@Test
+	public void dropsAnEntryOnceItHasExpired() {
+		TtlCache<String> cache = new TtlCache<String>(10, 60000);
+		cache.put("a", "1");
+		cache.setTtlMillis(-1);
+		assertNull(cache.get("a"));
+		cache.setTtlMillis(60000);
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void purgesExpiredEntries() {
+		TtlCache<String> cache = new TtlCache<String>(10, 60000);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.setTtlMillis(-1);
+		cache.purgeExpired();
+		cache.setTtlMillis(60000);
+		assertNull(cache.get("a"));
+		assertNull(cache.get("b"));
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedEntry() {
+		TtlCache<String> cache = new TtlCache<String>(2, 60000);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		assertEquals("1", cache.get("a"));
+		cache.put("c", "3");
+		assertNull(cache.get("b"));
+		assertEquals("1", cache.get("a"));
+		assertEquals("3", cache.get("c"));
+	}
+
+	@Test
+	public void forgetsInvalidatedAndClearedEntries() {
+		TtlCache<String> cache = new TtlCache<String>(10, 60000);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.invalidate("a");
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+		cache.clear();
+		assertNull(cache.get("b"));
+	}
+}